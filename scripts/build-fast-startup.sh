@@ -0,0 +1,56 @@
+#!/bin/bash
+
+# Fast-Startup Build Script
+# Packages the application with Spring AOT processing, lays it out as plain
+# jars on the classpath (class data sharing cannot read nested jars), and
+# creates an AppCDS archive from a training run that refreshes the context
+# and exits. The result is launched with target/fast-startup/run.sh.
+#
+# The AOT build goes to target/aot (see the Maven profile), so the standard
+# jar in target/ is left alone as the baseline for startup-benchmark.sh.
+
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+OUT="$(pwd)/target/fast-startup"
+MAIN_CLASS=com.example.mcpstateful.McpStatefulToolApplication
+FAST_STARTUP_OPTS="-Dspring.aot.enabled=true -Dspring.profiles.active=fast-startup"
+
+echo "⚡ Building Fast-Startup Distribution"
+echo "====================================="
+
+echo "🔨 Packaging with Spring AOT (Maven profile fast-startup, into target/aot)..."
+mvn -B -q -Pfast-startup -DskipTests clean package
+
+JAR="$(pwd)/target/aot/mcp-stateful-tool-java-1.0.0.jar"
+echo "📦 Extracting $(basename "$JAR")..."
+rm -rf "$OUT"
+mkdir -p "$OUT/exploded" "$OUT/lib"
+(cd "$OUT/exploded" && jar xf "$JAR")
+cp "$OUT"/exploded/BOOT-INF/lib/*.jar "$OUT/lib/"
+jar --create --file "$OUT/app.jar" -C "$OUT/exploded/BOOT-INF/classes" .
+rm -rf "$OUT/exploded"
+
+# The classpath must be identical when the archive is created and used
+CLASSPATH="$OUT/app.jar"
+for lib in $(ls "$OUT"/lib/*.jar | sort); do
+    CLASSPATH="$CLASSPATH:$lib"
+done
+
+echo "🏋️  Training run (context refresh only) to create the CDS archive..."
+java -XX:ArchiveClassesAtExit="$OUT/app.jsa" -Dspring.context.exit=onRefresh $FAST_STARTUP_OPTS \
+    -cp "$CLASSPATH" "$MAIN_CLASS" > "$OUT/training.log" 2>&1 || {
+    echo "❌ Training run failed, see $OUT/training.log"
+    exit 1
+}
+
+cat > "$OUT/run.sh" <<EOF
+#!/bin/bash
+# Generated by scripts/build-fast-startup.sh
+exec java -XX:SharedArchiveFile="$OUT/app.jsa" $FAST_STARTUP_OPTS -cp "$CLASSPATH" $MAIN_CLASS "\$@"
+EOF
+chmod +x "$OUT/run.sh"
+
+echo "✅ Fast-startup build ready"
+echo "   Archive: $OUT/app.jsa"
+echo "   Start:   $OUT/run.sh"
@@ -46,6 +46,17 @@ case "${1:-run}" in
         echo ""
         mvn spring-boot:run
         ;;
+    "fast" | "fast-startup")
+        echo "⚡ Starting MCP Stateful Server (Java) in fast-startup mode..."
+        if [ ! -x target/fast-startup/run.sh ]; then
+            ./scripts/build-fast-startup.sh || exit 1
+        fi
+        target/fast-startup/run.sh
+        ;;
+    "benchmark")
+        echo "⏱️  Measuring time to first tool call..."
+        ./scripts/startup-benchmark.sh both
+        ;;
     "test")
         echo "🧪 Running tests..."
         mvn test
@@ -63,6 +74,8 @@ case "${1:-run}" in
         echo ""
         echo "Commands:"
         echo "  run, server  - Start the MCP server (default)"
+        echo "  fast         - Start in fast-startup mode (AOT + CDS + lazy tools)"
+        echo "  benchmark    - Compare startup time to first tool call"
         echo "  test         - Run unit tests"
         echo "  build        - Build the project"
         echo "  clean        - Clean build artifacts"
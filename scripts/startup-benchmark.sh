@@ -0,0 +1,122 @@
+#!/bin/bash
+
+# Startup Benchmark
+# Measures the time from JVM launch until the first successful tool call on
+# /mcp: initialize -> notifications/initialized -> tools/call calculate.
+#
+# Usage: ./scripts/startup-benchmark.sh [standard|fast|both] [runs]
+#   standard - the packaged jar (mvn -DskipTests package)
+#   fast     - the fast-startup build (./scripts/build-fast-startup.sh)
+
+set -uo pipefail
+cd "$(dirname "$0")/.."
+
+MODE="${1:-both}"
+RUNS="${2:-5}"
+PORT="${PORT:-8080}"
+URL="http://localhost:$PORT/mcp"
+TIMEOUT_SECONDS=60
+JAR=target/mcp-stateful-tool-java-1.0.0.jar
+FAST_RUN=target/fast-startup/run.sh
+
+if [[ "$(date +%3N)" =~ ^[0-9]+$ ]]; then
+    now_ms() { date +%s%3N; }
+else
+    # BSD date has no sub-second format
+    now_ms() { python3 -c 'import time; print(int(time.time() * 1000))'; }
+fi
+
+# POST one JSON-RPC message; prints response headers and body
+mcp_post() {
+    local session_id=$1 body=$2
+    local headers=(-H "Content-Type: application/json" -H "Accept: application/json, text/event-stream")
+    if [ -n "$session_id" ]; then
+        headers+=(-H "Mcp-Session-Id: $session_id")
+    fi
+    curl -s -i --max-time 5 -X POST "$URL" "${headers[@]}" -d "$body"
+}
+
+# Succeeds once a full client handshake plus one tool call works
+first_tool_call() {
+    local response session_id
+    response=$(mcp_post "" '{"jsonrpc":"2.0","id":1,"method":"initialize","params":{"protocolVersion":"2025-03-26","capabilities":{},"clientInfo":{"name":"startup-benchmark","version":"1.0.0"}}}') || return 1
+    session_id=$(printf '%s' "$response" | tr -d '\r' | awk -F': ' 'tolower($1) == "mcp-session-id" { print $2 }')
+    [ -n "$session_id" ] || return 1
+    mcp_post "$session_id" '{"jsonrpc":"2.0","method":"notifications/initialized"}' > /dev/null || return 1
+    response=$(mcp_post "$session_id" '{"jsonrpc":"2.0","id":2,"method":"tools/call","params":{"name":"calculate","arguments":{"expression":"6 * 7"}}}') || return 1
+    printf '%s' "$response" | grep -q '42' && ! printf '%s' "$response" | grep -q '"isError":true'
+}
+
+# Start the server with the given command and print milliseconds until the first successful tool call
+measure() {
+    local label=$1
+    shift
+    local log="target/startup-benchmark-$label.log"
+    local start
+    start=$(now_ms)
+    "$@" --server.port="$PORT" > "$log" 2>&1 &
+    local pid=$!
+    until first_tool_call; do
+        if ! kill -0 "$pid" 2>/dev/null || [ $(( $(now_ms) - start )) -gt $(( TIMEOUT_SECONDS * 1000 )) ]; then
+            kill "$pid" 2>/dev/null
+            wait "$pid" 2>/dev/null
+            echo "❌ $label: no successful tool call, see $log" >&2
+            return 1
+        fi
+        sleep 0.05
+    done
+    local elapsed=$(( $(now_ms) - start ))
+    kill "$pid" 2>/dev/null
+    wait "$pid" 2>/dev/null
+    echo "$elapsed"
+}
+
+benchmark() {
+    local label=$1
+    shift
+    local samples=()
+    echo "⏱️  $label ($RUNS runs)"
+    for run in $(seq 1 "$RUNS"); do
+        local elapsed
+        elapsed=$(measure "$label" "$@") || exit 1
+        samples+=("$elapsed")
+        echo "   run $run: ${elapsed} ms"
+    done
+    local median
+    median=$(printf '%s\n' "${samples[@]}" | sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : int((v[NR / 2] + v[NR / 2 + 1]) / 2) }')
+    echo "   median: ${median} ms to first successful tool call"
+    echo ""
+}
+
+if curl -s -o /dev/null --max-time 2 "http://localhost:$PORT"; then
+    echo "❌ Port $PORT is already in use; stop the running server or set PORT"
+    exit 1
+fi
+
+echo "🚦 MCP Startup Benchmark"
+echo "========================"
+
+case "$MODE" in
+    "standard" | "fast" | "both") ;;
+    *)
+        echo "❌ Unknown mode: $MODE"
+        echo "Usage: $0 [standard|fast|both] [runs]"
+        exit 1
+        ;;
+esac
+
+if [ "$MODE" != "fast" ]; then
+    if [ ! -f "$JAR" ]; then
+        echo "❌ $JAR not found. Run: mvn -DskipTests package"
+        exit 1
+    fi
+    benchmark standard java -jar "$JAR"
+fi
+
+if [ "$MODE" != "standard" ]; then
+    if [ ! -x "$FAST_RUN" ]; then
+        echo "❌ $FAST_RUN not found. Run: ./scripts/build-fast-startup.sh"
+        exit 1
+    fi
+    benchmark fast "$FAST_RUN"
+fi
@@ -4,6 +4,7 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Main application class for MCP Stateful Tool Java server with Streamable HTTP transport.
@@ -19,6 +20,7 @@ import org.springframework.context.event.EventListener;
  * - JSON-RPC 2.0 protocol implementation
  */
 @SpringBootApplication
+@EnableScheduling
 public class McpStatefulToolApplication {
 
     public static void main(String[] args) {
@@ -37,7 +39,7 @@ public class McpStatefulToolApplication {
         System.out.println("📋 MCP Streamable HTTP Features:");
         System.out.println("  - Protocol Version: 2024-11-05");
         System.out.println("  - Transport: Streamable HTTP (JSON-RPC over HTTP)");
-        System.out.println("  - Tools: calculate, create_file, build_profile, list_sessions");
+        System.out.println("  - Tools: calculate, create_file, search_files, build_profile, import_profiles, run_pipeline, list_sessions, watch_sessions");
         System.out.println("  - Stateful Conversations: Enabled");
         System.out.println("  - Session Management: Automatic");
         System.out.println("💡 Connect with MCP Inspector using Streamable HTTP transport");
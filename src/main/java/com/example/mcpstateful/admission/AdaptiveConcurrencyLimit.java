@@ -0,0 +1,75 @@
+package com.example.mcpstateful.admission;
+
+/**
+ * Concurrency limit that adapts to observed latency using AIMD.
+ *
+ * Every call that finishes within the target latency grows the limit by
+ * {@code 1/limit} (about one per full window of calls); a slow or failed call
+ * shrinks it multiplicatively. Calls over the limit are rejected immediately
+ * rather than queued, so admitted calls keep a stable latency under overload.
+ */
+final class AdaptiveConcurrencyLimit {
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+
+    private double limit;
+    private int inFlight;
+    private double smoothedLatencyNanos;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long targetLatencyNanos) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void release(long latencyNanos, boolean success) {
+        inFlight--;
+        smoothedLatencyNanos = smoothedLatencyNanos == 0
+                ? latencyNanos
+                : smoothedLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+
+        if (!success || latencyNanos > targetLatencyNanos) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else if (inFlight + 1 >= limit / 2) {
+            // Only grow while the limit is actually being used, so idle periods do not inflate it
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * Give back a slot for a call that was admitted here but rejected by a later check.
+     * The call never ran, so it does not count towards the latency signal.
+     */
+    synchronized void cancel() {
+        inFlight--;
+    }
+
+    /**
+     * Suggested wait before retrying a rejected call: roughly one average call duration.
+     */
+    synchronized long retryAfterNanos() {
+        return (long) Math.max(10_000_000d, smoothedLatencyNanos);
+    }
+
+    synchronized int currentLimit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+}
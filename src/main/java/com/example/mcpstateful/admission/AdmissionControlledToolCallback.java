@@ -0,0 +1,132 @@
+package com.example.mcpstateful.admission;
+
+import com.example.mcpstateful.response.ToolResult;
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.state.SessionLimitExceededException;
+import com.example.mcpstateful.state.SessionManager;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.server.McpSyncServerExchange;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.mcp.McpToolUtils;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.io.IOException;
+
+/**
+ * Wraps a tool callback so every call passes admission control first.
+ * Rejected calls return a structured "rejected" result with a retry hint
+ * without touching the tool or its sessions. A call refused by the session
+ * store because it is full is reported the same way.
+ */
+public class AdmissionControlledToolCallback implements ToolCallback {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String ANONYMOUS_CLIENT = "anonymous";
+
+    private final ToolCallback delegate;
+    private final AdmissionController admissionController;
+    private final SessionManager sessionManager;
+    private final ToolResultRenderer renderer;
+    private final boolean takesSessionId;
+
+    public AdmissionControlledToolCallback(ToolCallback delegate, AdmissionController admissionController,
+                                           SessionManager sessionManager, ToolResultRenderer renderer) {
+        this.delegate = delegate;
+        this.admissionController = admissionController;
+        this.sessionManager = sessionManager;
+        this.renderer = renderer;
+        this.takesSessionId = delegate.getToolDefinition().inputSchema().contains("\"sessionId\"");
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        String toolName = getToolDefinition().name();
+
+        AdmissionController.Permit permit;
+        try {
+            permit = admissionController.admit(clientId(toolContext), toolName, createsSession(toolInput));
+        } catch (AdmissionRejectedException e) {
+            return renderer.render(ToolResult.rejected(toolName, e.getMessage(), e.getRetryAfterMillis()));
+        }
+
+        boolean success = false;
+        try {
+            String result = delegate.call(toolInput, toolContext);
+            success = true;
+            return result;
+        } catch (RuntimeException e) {
+            SessionLimitExceededException full = sessionLimitCause(e);
+            if (full == null) {
+                throw e;
+            }
+            // The store was full, which says nothing about how the tool itself is doing
+            success = true;
+            return renderer.render(ToolResult.rejected(toolName, full.getMessage(),
+                    AdmissionController.SESSION_STORE_RETRY_MILLIS));
+        } finally {
+            permit.release(success);
+        }
+    }
+
+    /**
+     * Identify the MCP client by its transport session, which the server assigns.
+     * The client name sent in {@code initialize} is not used: any client can claim
+     * any name, and every user of the same client product would share its limits.
+     */
+    private String clientId(ToolContext toolContext) {
+        if (toolContext == null) {
+            return ANONYMOUS_CLIENT;
+        }
+        return McpToolUtils.getMcpExchange(toolContext)
+                .map(McpSyncServerExchange::sessionId)
+                .orElse(ANONYMOUS_CLIENT);
+    }
+
+    /**
+     * Tool callbacks wrap what the tool method throws, so look through the causes.
+     */
+    private static SessionLimitExceededException sessionLimitCause(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SessionLimitExceededException full) {
+                return full;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A call opens a new session when the tool is session-based and the
+     * given session ID is missing or unknown.
+     */
+    private boolean createsSession(String toolInput) {
+        if (!takesSessionId) {
+            return false;
+        }
+        try {
+            JsonNode sessionId = OBJECT_MAPPER.readTree(toolInput).path("sessionId");
+            return !sessionId.isTextual() || sessionId.asText().isBlank()
+                    || !sessionManager.sessionExists(sessionId.asText());
+        } catch (IOException e) {
+            // Let the tool itself report malformed input
+            return false;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.mcpstateful.admission;
+
+import com.example.mcpstateful.state.SessionManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control and load shedding for tool calls.
+ *
+ * Each call must pass, in order: the session-store capacity check (only for
+ * calls that would open a new session), the per-client and per-tool
+ * concurrency limits, and the per-client and per-tool token buckets. Calls
+ * that fail a check are rejected at once with a retry hint instead of queuing,
+ * so overload does not turn into long waits for everybody. Per-tool
+ * concurrency adapts to observed latency (AIMD), against a target latency
+ * that can be set per tool; tools whose calls are long by design get a
+ * fixed limit instead.
+ */
+@Component
+public class AdmissionController {
+
+    static final long SESSION_STORE_RETRY_MILLIS = 1000;
+    private static final long CLIENT_BUSY_RETRY_MILLIS = 50;
+    private static final String TOOL_SETTINGS = "stateful-tools.admission.tool-concurrency.tools.";
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${stateful-tools.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stateful-tools.admission.tool-concurrency.initial-limit:16}")
+    private int toolInitialLimit;
+
+    @Value("${stateful-tools.admission.tool-concurrency.min-limit:2}")
+    private int toolMinLimit;
+
+    @Value("${stateful-tools.admission.tool-concurrency.max-limit:128}")
+    private int toolMaxLimit;
+
+    @Value("${stateful-tools.admission.tool-concurrency.target-latency-ms:250}")
+    private long toolTargetLatencyMillis;
+
+    @Value("${stateful-tools.admission.tool-rate.permits-per-second:200}")
+    private double toolPermitsPerSecond;
+
+    @Value("${stateful-tools.admission.tool-rate.burst:400}")
+    private double toolBurst;
+
+    @Value("${stateful-tools.admission.client-concurrency:32}")
+    private int clientConcurrency;
+
+    @Value("${stateful-tools.admission.client-rate.permits-per-second:50}")
+    private double clientPermitsPerSecond;
+
+    @Value("${stateful-tools.admission.client-rate.burst:100}")
+    private double clientBurst;
+
+    @Value("${stateful-tools.admission.client-idle-seconds:300}")
+    private long clientIdleSeconds;
+
+    @Value("${stateful-tools.admission.session-high-watermark:0.9}")
+    private double sessionHighWatermark;
+
+    private final Map<String, AdaptiveConcurrencyLimit> toolLimits = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> toolBuckets = new ConcurrentHashMap<>();
+    // Per-client counters are only changed inside compute(), which also guards them against eviction
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Admit a tool call or throw {@link AdmissionRejectedException}.
+     * The returned permit must be released when the call finishes.
+     *
+     * @param clientId       identifies the caller for per-client limits
+     * @param toolName       the tool being called
+     * @param createsSession whether the call would open a new session
+     */
+    public Permit admit(String clientId, String toolName, boolean createsSession) {
+        if (!enabled) {
+            return Permit.NOOP;
+        }
+
+        int maxSessions = sessionManager.getMaxSessions();
+        if (createsSession && maxSessions > 0
+                && sessionManager.getSessionCount() >= maxSessions * sessionHighWatermark) {
+            throw new AdmissionRejectedException(
+                    "Session store is near capacity; not starting new sessions", SESSION_STORE_RETRY_MILLIS);
+        }
+
+        boolean[] clientAdmitted = new boolean[1];
+        Client client = clients.compute(clientId, (id, existing) -> {
+            Client current = existing != null ? existing
+                    : new Client(new TokenBucket(clientPermitsPerSecond, clientBurst));
+            current.lastUsedNanos = System.nanoTime();
+            if (current.inFlight < clientConcurrency) {
+                current.inFlight++;
+                clientAdmitted[0] = true;
+            }
+            return current;
+        });
+        if (!clientAdmitted[0]) {
+            throw new AdmissionRejectedException(
+                    "Too many concurrent calls from client '" + clientId + "'", CLIENT_BUSY_RETRY_MILLIS);
+        }
+
+        AdaptiveConcurrencyLimit toolLimit = toolLimits.computeIfAbsent(toolName, this::newToolLimit);
+        if (!toolLimit.tryAcquire()) {
+            releaseClient(clientId);
+            throw new AdmissionRejectedException(
+                    "Tool '" + toolName + "' is at its concurrency limit (" + toolLimit.currentLimit() + ")",
+                    toMillis(toolLimit.retryAfterNanos()));
+        }
+
+        TokenBucket toolBucket = toolBuckets.computeIfAbsent(toolName,
+                name -> new TokenBucket(toolPermitsPerSecond, toolBurst));
+        long[] waits = TokenBucket.tryAcquireBoth(client.bucket, toolBucket);
+        if (waits[0] > 0 || waits[1] > 0) {
+            releaseClient(clientId);
+            toolLimit.cancel();
+            throw new AdmissionRejectedException(waits[0] > 0
+                    ? "Rate limit exceeded for client '" + clientId + "'"
+                    : "Rate limit exceeded for tool '" + toolName + "'",
+                    toMillis(Math.max(waits[0], waits[1])));
+        }
+
+        return new Permit(this, clientId, toolLimit, System.nanoTime());
+    }
+
+    /**
+     * Current adaptive concurrency limit for a tool, or -1 if it has not been called yet.
+     */
+    public int currentToolLimit(String toolName) {
+        AdaptiveConcurrencyLimit limit = toolLimits.get(toolName);
+        return limit == null ? -1 : limit.currentLimit();
+    }
+
+    /**
+     * Number of clients whose limits are currently tracked.
+     */
+    public int getTrackedClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Forget clients idle for longer than {@code stateful-tools.admission.client-idle-seconds},
+     * so per-client state does not grow with every transport session ever seen.
+     */
+    @Scheduled(fixedDelayString = "${stateful-tools.admission.client-idle-check-interval-ms:60000}")
+    public void evictIdleClients() {
+        evictClientsIdleLongerThan(Duration.ofSeconds(clientIdleSeconds));
+    }
+
+    /**
+     * Forget every client with no call in flight and none started within the given time.
+     * Returns how many were evicted.
+     */
+    public int evictClientsIdleLongerThan(Duration idleTimeout) {
+        long timeoutNanos = idleTimeout.toNanos();
+        int[] evicted = new int[1];
+        for (String clientId : clients.keySet()) {
+            clients.computeIfPresent(clientId, (id, client) -> {
+                if (client.inFlight == 0 && System.nanoTime() - client.lastUsedNanos > timeoutNanos) {
+                    evicted[0]++;
+                    return null;
+                }
+                return client;
+            });
+        }
+        return evicted[0];
+    }
+
+    private AdaptiveConcurrencyLimit newToolLimit(String toolName) {
+        Integer fixedLimit = environment.getProperty(TOOL_SETTINGS + toolName + ".fixed-limit", Integer.class);
+        if (fixedLimit != null) {
+            // Slow by design, such as a watch held open: latency is no sign of overload, so the limit never moves
+            return new AdaptiveConcurrencyLimit(fixedLimit, fixedLimit, fixedLimit, Long.MAX_VALUE);
+        }
+        long targetLatencyMillis = environment.getProperty(
+                TOOL_SETTINGS + toolName + ".target-latency-ms", Long.class, toolTargetLatencyMillis);
+        return new AdaptiveConcurrencyLimit(toolInitialLimit, toolMinLimit, toolMaxLimit,
+                TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis));
+    }
+
+    private void releaseClient(String clientId) {
+        clients.computeIfPresent(clientId, (id, client) -> {
+            client.inFlight--;
+            return client;
+        });
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * Concurrency and rate state of one client.
+     */
+    private static final class Client {
+
+        private final TokenBucket bucket;
+        private int inFlight;
+        private long lastUsedNanos;
+
+        Client(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    /**
+     * An admitted call. Releasing it frees the concurrency slots and feeds
+     * the call's latency back into the adaptive limit.
+     */
+    public static class Permit {
+
+        static final Permit NOOP = new Permit(null, null, null, 0);
+
+        private final AdmissionController controller;
+        private final String clientId;
+        private final AdaptiveConcurrencyLimit toolLimit;
+        private final long startNanos;
+
+        private Permit(AdmissionController controller, String clientId, AdaptiveConcurrencyLimit toolLimit,
+                       long startNanos) {
+            this.controller = controller;
+            this.clientId = clientId;
+            this.toolLimit = toolLimit;
+            this.startNanos = startNanos;
+        }
+
+        public void release(boolean success) {
+            if (this == NOOP) {
+                return;
+            }
+            controller.releaseClient(clientId);
+            toolLimit.release(System.nanoTime() - startNanos, success);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.mcpstateful.admission;
+
+/**
+ * Thrown when a tool call is shed by admission control.
+ * Carries a hint for how long the client should wait before retrying.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final long retryAfterMillis;
+
+    public AdmissionRejectedException(String message, long retryAfterMillis) {
+        // Rejections are part of normal overload handling; skip the stack trace to keep them cheap
+        super(message, null, false, false);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.mcpstateful.admission;
+
+/**
+ * Token-bucket rate limiter: refills continuously at a fixed rate up to a burst capacity.
+ * A bucket with a rate of zero or less never runs out.
+ */
+final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double permitsPerSecond, double burst) {
+        this.capacity = Math.max(1, burst);
+        this.tokensPerNano = permitsPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take one token from each bucket, or from neither if either is empty, so a
+     * call refused by one limit does not use up the other. Returns, per bucket, the
+     * nanoseconds until it has a token; both are 0 exactly when the tokens were taken.
+     * Buckets are locked in argument order; callers always pass the client's first.
+     */
+    static long[] tryAcquireBoth(TokenBucket first, TokenBucket second) {
+        synchronized (first) {
+            synchronized (second) {
+                long firstWait = first.nanosUntilAvailable();
+                long secondWait = second.nanosUntilAvailable();
+                if (firstWait == 0 && secondWait == 0) {
+                    first.take();
+                    second.take();
+                }
+                return new long[] {firstWait, secondWait};
+            }
+        }
+    }
+
+    private long nanosUntilAvailable() {
+        if (tokensPerNano <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    private void take() {
+        if (tokensPerNano > 0) {
+            tokens -= 1;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.mcpstateful.config;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.ai.tool.method.MethodToolCallback;
+import org.springframework.ai.tool.support.ToolDefinitions;
+import org.springframework.ai.tool.support.ToolUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tool callback built from a {@code @Tool} method alone, without an instance
+ * of the service that declares it.
+ *
+ * The definition (name, description, input schema) is available right away,
+ * so the tool can be listed, but the service bean is only created when the
+ * tool is first called. Used in fast-startup mode so a new replica does not
+ * build every tool service, and its dependencies, before it can serve.
+ */
+final class LazyToolCallback implements ToolCallback {
+
+    private final ToolDefinition toolDefinition;
+    private final ToolMetadata toolMetadata;
+    private final Method toolMethod;
+    private final ObjectProvider<?> toolObject;
+    private volatile ToolCallback delegate;
+
+    private LazyToolCallback(Method toolMethod, ObjectProvider<?> toolObject) {
+        this.toolDefinition = ToolDefinitions.from(toolMethod);
+        this.toolMetadata = ToolMetadata.from(toolMethod);
+        this.toolMethod = toolMethod;
+        this.toolObject = toolObject;
+    }
+
+    /**
+     * One lazy callback per {@code @Tool} method declared by the given service type.
+     */
+    static List<ToolCallback> forToolType(Class<?> toolType, ObjectProvider<?> toolObject) {
+        return Arrays.stream(ReflectionUtils.getDeclaredMethods(toolType))
+                .filter(method -> method.isAnnotationPresent(Tool.class))
+                .<ToolCallback>map(method -> new LazyToolCallback(method, toolObject))
+                .toList();
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return toolDefinition;
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return toolMetadata;
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return delegate().call(toolInput);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return delegate().call(toolInput, toolContext);
+    }
+
+    private ToolCallback delegate() {
+        ToolCallback callback = delegate;
+        if (callback == null) {
+            synchronized (this) {
+                callback = delegate;
+                if (callback == null) {
+                    callback = MethodToolCallback.builder()
+                            .toolDefinition(toolDefinition)
+                            .toolMetadata(toolMetadata)
+                            .toolMethod(toolMethod)
+                            .toolObject(toolObject.getObject())
+                            .toolCallResultConverter(ToolUtils.getToolCallResultConverter(toolMethod))
+                            .build();
+                    delegate = callback;
+                }
+            }
+        }
+        return callback;
+    }
+}
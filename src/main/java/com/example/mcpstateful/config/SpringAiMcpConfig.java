@@ -1,13 +1,30 @@
 package com.example.mcpstateful.config;
 
+import com.example.mcpstateful.admission.AdmissionControlledToolCallback;
+import com.example.mcpstateful.admission.AdmissionController;
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.service.SessionWatchService;
 import com.example.mcpstateful.service.StatefulCalculatorService;
 import com.example.mcpstateful.service.StatefulFileService;
+import com.example.mcpstateful.service.StatefulFileSearchService;
+import com.example.mcpstateful.service.StatefulPipelineService;
 import com.example.mcpstateful.service.StatefulProfileBuilderService;
+import com.example.mcpstateful.service.StatefulProfileImportService;
+import com.example.mcpstateful.state.SessionManager;
+import io.modelcontextprotocol.server.McpSyncServer;
+import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.ai.tool.method.MethodToolCallbackProvider;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
 /**
  * Spring AI MCP Configuration using the official approach.
  * 
@@ -17,21 +34,41 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class SpringAiMcpConfig {
 
+    private static final List<Class<?>> TOOL_SERVICES = List.of(
+            StatefulCalculatorService.class,
+            StatefulFileService.class,
+            StatefulFileSearchService.class,
+            StatefulProfileBuilderService.class,
+            StatefulProfileImportService.class,
+            StatefulPipelineService.class,
+            SessionWatchService.class);
+
     /**
      * Configure the MCP tools using the official Spring AI MCP approach.
-     * This creates a ToolCallbackProvider that automatically discovers @Tool methods.
+     * This creates a ToolCallbackProvider that automatically discovers @Tool methods,
+     * and puts every tool behind admission control.
+     *
+     * With {@code stateful-tools.lazy-tools} enabled (the fast-startup profile),
+     * tools are registered from their methods and each service is only created
+     * on its first call.
      */
     @Bean
     public ToolCallbackProvider statefulMcpTools(
-            StatefulCalculatorService calculatorService,
-            StatefulFileService fileService,
-            StatefulProfileBuilderService profileBuilderService
+            BeanFactory beanFactory,
+            @Value("${stateful-tools.lazy-tools:false}") boolean lazyTools,
+            AdmissionController admissionController,
+            SessionManager sessionManager,
+            ToolResultRenderer renderer
     ) {
         System.out.println("🚀 Configuring Spring AI MCP Server with stateful tools:");
         System.out.println("  • calculate: Mathematical calculations with multi-turn conversations");
         System.out.println("  • create_file: File creation with progressive parameter collection");  
+        System.out.println("  • search_files: Parallel, bounded file search with paged results");
         System.out.println("  • list_sessions: Session management and debugging");
         System.out.println("  • build_profile: User profile creation with progressive parameter collection");
+        System.out.println("  • import_profiles: Streaming bulk profile import from NDJSON or CSV files");
+        System.out.println("  • run_pipeline: Server-side chains of tools with bound outputs in one session");
+        System.out.println("  • watch_sessions: Session lifecycle events pushed as MCP notifications");
         
         System.out.println("📋 MCP Protocol Features:");
         System.out.println("   - Protocol version: 2024-11-05");
@@ -39,9 +76,34 @@ public class SpringAiMcpConfig {
         System.out.println("   - Stateful conversations: Supported");
         System.out.println("   - Session management: Active");
         System.out.println("   - Multi-turn execution: Enabled");
+        System.out.println("   - Admission control: Per-client and per-tool limits");
+        System.out.println("   - Tool services: " + (lazyTools ? "Created on first call" : "Created at startup"));
         
-        return MethodToolCallbackProvider.builder()
-                .toolObjects(calculatorService, fileService, profileBuilderService)
-                .build();
+        Stream<ToolCallback> toolCallbacks;
+        if (lazyTools) {
+            toolCallbacks = TOOL_SERVICES.stream()
+                    .flatMap(type -> LazyToolCallback.forToolType(type, beanFactory.getBeanProvider(type)).stream());
+        } else {
+            toolCallbacks = Arrays.stream(MethodToolCallbackProvider.builder()
+                    .toolObjects(TOOL_SERVICES.stream().map(beanFactory::getBean).toArray())
+                    .build()
+                    .getToolCallbacks());
+        }
+
+        List<ToolCallback> admissionControlled = toolCallbacks
+                .<ToolCallback>map(callback -> new AdmissionControlledToolCallback(
+                        callback, admissionController, sessionManager, renderer))
+                .toList();
+        return ToolCallbackProvider.from(admissionControlled);
+    }
+
+    /**
+     * Keep the MCP server eager when the context is lazily initialized.
+     * Nothing depends on it, so otherwise it would never be created and no
+     * tools would be served.
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter mcpServerEagerInitialization() {
+        return LazyInitializationExcludeFilter.forBeanTypes(McpSyncServer.class);
     }
 }
@@ -0,0 +1,26 @@
+package com.example.mcpstateful.response;
+
+/**
+ * Enumeration of the ways a tool result can be rendered for the client.
+ */
+public enum ResponseFormat {
+    /**
+     * Compact, machine-readable JSON object (default).
+     */
+    JSON,
+
+    /**
+     * Human-readable text with Markdown hints, as returned by earlier versions.
+     */
+    TEXT;
+
+    /**
+     * Parse a configured format name, ignoring case. Unknown or empty values fall back to JSON.
+     */
+    public static ResponseFormat fromName(String name) {
+        if (name != null && name.trim().equalsIgnoreCase("text")) {
+            return TEXT;
+        }
+        return JSON;
+    }
+}
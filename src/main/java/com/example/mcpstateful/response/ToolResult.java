@@ -0,0 +1,111 @@
+package com.example.mcpstateful.response;
+
+import java.util.function.Supplier;
+
+/**
+ * Structured outcome of a single tool call.
+ *
+ * Tools build one of these instead of formatting strings themselves; the
+ * {@link ToolResultRenderer} turns it into compact JSON or, on request, the
+ * human-readable text. The text is produced lazily so JSON responses never
+ * pay for building it.
+ */
+public record ToolResult(
+        Status status,
+        String tool,
+        String sessionId,
+        String missingParameter,
+        String description,
+        String error,
+        Long retryAfterMillis,
+        Object result,
+        Supplier<String> text
+) {
+
+    /**
+     * Outcome of a tool call as reported to the client.
+     */
+    public enum Status {
+        /**
+         * A required parameter is still missing; call again with it.
+         */
+        NEEDS_INPUT,
+
+        /**
+         * The tool ran successfully; {@link ToolResult#result()} holds the payload.
+         */
+        SUCCESS,
+
+        /**
+         * The tool failed; the session is kept so the call can be retried.
+         */
+        ERROR,
+
+        /**
+         * The call was shed by admission control before running; retry after the hint.
+         */
+        REJECTED
+    }
+
+    /**
+     * Ask the client for the next missing parameter.
+     *
+     * @param action what the tool is trying to do, completing "I need more information to ..."
+     */
+    public static ToolResult needsInput(String tool, String sessionId, String missingParameter,
+                                        String description, String action) {
+        return new ToolResult(Status.NEEDS_INPUT, tool, sessionId, missingParameter, description, null, null, null,
+                () -> "I need more information to " + action + ".\n\n" +
+                      "Missing parameter: **" + missingParameter + "**\n" +
+                      "Description: " + description + "\n\n" +
+                      "Session ID: `" + sessionId + "`\n" +
+                      "Please call the tool again with this parameter.");
+    }
+
+    /**
+     * Report a successful run with its payload and the text shown in text mode.
+     */
+    public static ToolResult success(String tool, Object result, Supplier<String> text) {
+        return new ToolResult(Status.SUCCESS, tool, null, null, null, null, null, result, text);
+    }
+
+    /**
+     * Report a failure for a session that is kept open for a retry.
+     *
+     * @param textPrefix lead-in shown before the error in text mode
+     * @param retryHint  closing instruction shown in text mode
+     */
+    public static ToolResult error(String tool, String sessionId, String error, String textPrefix, String retryHint) {
+        return new ToolResult(Status.ERROR, tool, sessionId, null, null, error, null, null,
+                () -> textPrefix + error + "\n\n" +
+                      "Session ID: `" + sessionId + "`\n" +
+                      retryHint);
+    }
+
+    /**
+     * Report a final turn that was not run because a concurrent call for the
+     * same session is already running the tool.
+     */
+    public static ToolResult alreadyRunning(String tool, String sessionId) {
+        return error(tool, sessionId, "Another call is already running the tool for this session.",
+                "⏳ Not run: ", "That call returns the result; call again with this session ID only if it fails.");
+    }
+
+    /**
+     * Report a call whose session was completed, deleted or expired by another
+     * call while this one was using it.
+     */
+    public static ToolResult sessionClosed(String tool, String sessionId) {
+        return error(tool, sessionId, "The session was closed by another call while this call was using it.",
+                "⏹ Not run: ", "Call the tool again without a session ID to start over.");
+    }
+
+    /**
+     * Report a call that was not run because the server is shedding load.
+     */
+    public static ToolResult rejected(String tool, String reason, long retryAfterMillis) {
+        return new ToolResult(Status.REJECTED, tool, null, null, null, reason, retryAfterMillis, null,
+                () -> "⏳ Server busy: " + reason + "\n" +
+                      "Please retry after " + retryAfterMillis + " ms.");
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.mcpstateful.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * Renders {@link ToolResult}s into the string returned to the MCP client.
+ *
+ * JSON is written with a streaming generator over a shared mapper, so no
+ * intermediate tree or format template is built per call. The server-wide
+ * format is set with {@code stateful-tools.response-format} (json or text).
+ */
+@Component
+public class ToolResultRenderer {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter prettyWriter = objectMapper.writerWithDefaultPrettyPrinter();
+
+    private final ResponseFormat defaultFormat;
+
+    public ToolResultRenderer(@Value("${stateful-tools.response-format:json}") String defaultFormat) {
+        this.defaultFormat = ResponseFormat.fromName(defaultFormat);
+    }
+
+    /**
+     * Render a result in the configured default format.
+     */
+    public String render(ToolResult result) {
+        return render(result, defaultFormat);
+    }
+
+    /**
+     * Render a result in the given format.
+     */
+    public String render(ToolResult result, ResponseFormat format) {
+        if (format == ResponseFormat.TEXT) {
+            return result.text().get();
+        }
+        return renderJson(result);
+    }
+
+    /**
+     * Pretty-print a payload for inclusion in text responses.
+     */
+    public String prettyJson(Object value) {
+        try {
+            return prettyWriter.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Serialize a value as compact JSON, e.g. for notification payloads.
+     */
+    public String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public ResponseFormat getDefaultFormat() {
+        return defaultFormat;
+    }
+
+    private String renderJson(ToolResult result) {
+        StringWriter out = new StringWriter(128);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("status", result.status().name().toLowerCase());
+            generator.writeStringField("tool", result.tool());
+            if (result.sessionId() != null) {
+                generator.writeStringField("sessionId", result.sessionId());
+            }
+            if (result.missingParameter() != null) {
+                generator.writeStringField("missing", result.missingParameter());
+                generator.writeStringField("description", result.description());
+            }
+            if (result.error() != null) {
+                generator.writeStringField("error", result.error());
+            }
+            if (result.retryAfterMillis() != null) {
+                generator.writeNumberField("retryAfterMs", result.retryAfterMillis());
+            }
+            if (result.result() != null) {
+                generator.writeFieldName("result");
+                generator.writeObject(result.result());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.mcpstateful.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A parsed arithmetic expression that may contain named variables.
+ *
+ * The expression is parsed once into a tree. Every subtree remembers the
+ * variables it depends on and caches its value as soon as all of them are
+ * bound, so binding (or re-binding) a variable only recomputes the subtrees
+ * that contain it. Concurrent turns of one session share the instance, so
+ * binding and evaluation are serialized on it.
+ *
+ * Supports {@code + - * /}, unary minus, parentheses, {@code sqrt(...)},
+ * and the constants {@code pi} and {@code e}.
+ */
+final class CompiledExpression {
+
+    private static final Map<String, Double> CONSTANTS = Map.of("pi", Math.PI, "e", Math.E);
+
+    private final String source;
+    private final Node root;
+    private final Map<String, Double> bindings = new HashMap<>();
+    private int computations;
+
+    private CompiledExpression(String source, Node root) {
+        this.source = source;
+        this.root = root;
+    }
+
+    /**
+     * Parse an expression. Throws IllegalArgumentException if it is malformed.
+     */
+    static CompiledExpression compile(String source) {
+        Parser parser = new Parser(source);
+        Node root = parser.parseExpression();
+        parser.expectEnd();
+        return new CompiledExpression(source, root);
+    }
+
+    String source() {
+        return source;
+    }
+
+    /**
+     * Variables in order of first appearance.
+     */
+    Set<String> variables() {
+        return root.variables;
+    }
+
+    /**
+     * Snapshot of the values bound so far.
+     */
+    synchronized Map<String, Double> bindings() {
+        return Map.copyOf(bindings);
+    }
+
+    synchronized boolean isFullyBound() {
+        return bindings.keySet().containsAll(root.variables);
+    }
+
+    /**
+     * Bind a variable, discarding cached values only of the subtrees that depend on it.
+     */
+    synchronized void bind(String name, double value) {
+        Double previous = bindings.put(name, value);
+        if (previous != null && previous != value) {
+            invalidate(root, name);
+        }
+    }
+
+    /**
+     * Evaluate every subtree whose variables are all bound and cache the results.
+     * Returns the value of the whole expression, or null while variables are still unbound.
+     */
+    synchronized Double evaluateBound() {
+        return evaluate(root);
+    }
+
+    /**
+     * Number of node computations performed so far; cached subtrees are not counted.
+     */
+    synchronized int computations() {
+        return computations;
+    }
+
+    private Double evaluate(Node node) {
+        if (node.value != null) {
+            return node.value;
+        }
+        List<Double> values = new ArrayList<>(node.children.size());
+        boolean complete = true;
+        for (Node child : node.children) {
+            Double value = evaluate(child);
+            complete &= value != null;
+            values.add(value);
+        }
+        if (!complete) {
+            return null;
+        }
+        if (node instanceof Variable variable) {
+            Double bound = bindings.get(variable.name);
+            if (bound == null) {
+                return null;
+            }
+            node.value = bound;
+        } else {
+            node.value = node.compute(values);
+        }
+        computations++;
+        return node.value;
+    }
+
+    private void invalidate(Node node, String name) {
+        if (node.variables.contains(name)) {
+            node.value = null;
+            for (Node child : node.children) {
+                invalidate(child, name);
+            }
+        }
+    }
+
+    /**
+     * A subtree with its dependencies and cached value.
+     */
+    private abstract static class Node {
+        final List<Node> children;
+        final Set<String> variables;
+        Double value;
+
+        Node(List<Node> children, Set<String> ownVariables) {
+            this.children = children;
+            Set<String> variables = new LinkedHashSet<>();
+            children.forEach(child -> variables.addAll(child.variables));
+            variables.addAll(ownVariables);
+            this.variables = Collections.unmodifiableSet(variables);
+        }
+
+        abstract double compute(List<Double> childValues);
+    }
+
+    private static final class Constant extends Node {
+        private final double constant;
+
+        Constant(double constant) {
+            super(List.of(), Set.of());
+            this.constant = constant;
+        }
+
+        @Override
+        double compute(List<Double> childValues) {
+            return constant;
+        }
+    }
+
+    private static final class Variable extends Node {
+        private final String name;
+
+        Variable(String name) {
+            super(List.of(), Set.of(name));
+            this.name = name;
+        }
+
+        @Override
+        double compute(List<Double> childValues) {
+            throw new IllegalStateException("Variables are resolved from bindings");
+        }
+    }
+
+    private static final class Operation extends Node {
+        private final char operator;
+
+        Operation(char operator, List<Node> operands) {
+            super(operands, Set.of());
+            this.operator = operator;
+        }
+
+        @Override
+        double compute(List<Double> childValues) {
+            switch (operator) {
+                case '+':
+                    return childValues.get(0) + childValues.get(1);
+                case '-':
+                    return childValues.get(0) - childValues.get(1);
+                case '*':
+                    return childValues.get(0) * childValues.get(1);
+                case '/':
+                    if (childValues.get(1) == 0) throw new ArithmeticException("Division by zero");
+                    return childValues.get(0) / childValues.get(1);
+                case 'n':
+                    return -childValues.get(0);
+                case 's':
+                    return Math.sqrt(childValues.get(0));
+                default:
+                    throw new IllegalStateException("Unknown operator: " + operator);
+            }
+        }
+    }
+
+    /**
+     * Recursive-descent parser; + and - bind weaker than * and /, both left-associative.
+     */
+    private static final class Parser {
+        private final String input;
+        private int pos;
+
+        Parser(String input) {
+            this.input = input;
+        }
+
+        Node parseExpression() {
+            Node left = parseTerm();
+            while (peek() == '+' || peek() == '-') {
+                char op = input.charAt(pos++);
+                left = new Operation(op, List.of(left, parseTerm()));
+            }
+            return left;
+        }
+
+        private Node parseTerm() {
+            Node left = parseUnary();
+            while (peek() == '*' || peek() == '/') {
+                char op = input.charAt(pos++);
+                left = new Operation(op, List.of(left, parseUnary()));
+            }
+            return left;
+        }
+
+        private Node parseUnary() {
+            if (peek() == '-') {
+                pos++;
+                return new Operation('n', List.of(parseUnary()));
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() {
+            char c = peek();
+            if (c == '(') {
+                pos++;
+                Node inner = parseExpression();
+                expect(')');
+                return inner;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                int start = pos;
+                while (pos < input.length() && (Character.isDigit(input.charAt(pos)) || input.charAt(pos) == '.')) {
+                    pos++;
+                }
+                try {
+                    return new Constant(Double.parseDouble(input.substring(start, pos)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number '" + input.substring(start, pos) + "'");
+                }
+            }
+            if (Character.isLetter(c) || c == '_') {
+                int start = pos;
+                while (pos < input.length() && (Character.isLetterOrDigit(input.charAt(pos)) || input.charAt(pos) == '_')) {
+                    pos++;
+                }
+                String name = input.substring(start, pos);
+                if (peek() == '(') {
+                    if (!name.equals("sqrt")) {
+                        throw new IllegalArgumentException("Unknown function '" + name + "'");
+                    }
+                    pos++;
+                    Node argument = parseExpression();
+                    expect(')');
+                    return new Operation('s', List.of(argument));
+                }
+                Double constant = CONSTANTS.get(name);
+                return constant != null ? new Constant(constant) : new Variable(name);
+            }
+            throw new IllegalArgumentException(c == 0
+                    ? "Unexpected end of expression"
+                    : "Unexpected '" + c + "' at position " + (pos + 1));
+        }
+
+        void expectEnd() {
+            if (peek() != 0) {
+                throw new IllegalArgumentException("Unexpected '" + peek() + "' at position " + (pos + 1));
+            }
+        }
+
+        private void expect(char expected) {
+            if (peek() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at position " + (pos + 1));
+            }
+            pos++;
+        }
+
+        /**
+         * Next significant character, or 0 at the end of input.
+         */
+        private char peek() {
+            while (pos < input.length() && Character.isWhitespace(input.charAt(pos))) {
+                pos++;
+            }
+            return pos < input.length() ? input.charAt(pos) : 0;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.mcpstateful.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least-recently-used cache of directory listings for {@code search_files}.
+ *
+ * Repeated searches of the same roots mostly re-read directories that have
+ * not changed. A cached listing is reused while it is younger than the TTL
+ * and the directory's modification time is unchanged, which costs one stat
+ * instead of reading every entry. Adding, removing or renaming an entry
+ * updates the directory's modification time, so such changes are seen at
+ * once; the TTL bounds staleness on file systems with coarse timestamps.
+ */
+@Component
+class DirectoryListingCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    DirectoryListingCache(
+            @Value("${stateful-tools.file-search.listing-cache.max-entries:4096}") int maxEntries,
+            @Value("${stateful-tools.file-search.listing-cache.ttl-seconds:30}") long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+    }
+
+    /**
+     * Regular files and subdirectories directly inside a directory.
+     * Symbolic links are left out, so a search cannot loop.
+     */
+    record Listing(List<Path> files, List<Path> directories) {
+    }
+
+    /**
+     * List a directory, reusing a cached listing if it is still valid.
+     */
+    Listing list(Path directory) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(directory, LinkOption.NOFOLLOW_LINKS);
+        if (maxEntries > 0) {
+            synchronized (entries) {
+                Entry entry = entries.get(directory);
+                if (entry != null && entry.expiresAt() - System.nanoTime() > 0 && entry.modified().equals(modified)) {
+                    hits.incrementAndGet();
+                    return entry.listing();
+                }
+            }
+        }
+        misses.incrementAndGet();
+
+        Listing listing = read(directory);
+        if (maxEntries > 0) {
+            synchronized (entries) {
+                entries.put(directory, new Entry(listing, modified, System.nanoTime() + ttlNanos));
+                Iterator<Entry> eldest = entries.values().iterator();
+                while (entries.size() > maxEntries) {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+        return listing;
+    }
+
+    /**
+     * Listings served from the cache since startup.
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Listings read from the file system since startup.
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    private static Listing read(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        List<Path> directories = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    // Deleted while listing, or not accessible
+                    continue;
+                }
+                if (attributes.isRegularFile()) {
+                    files.add(entry);
+                } else if (attributes.isDirectory()) {
+                    directories.add(entry);
+                }
+            }
+        }
+        return new Listing(List.copyOf(files), List.copyOf(directories));
+    }
+
+    private record Entry(Listing listing, FileTime modified, long expiresAt) {
+    }
+}
@@ -0,0 +1,406 @@
+package com.example.mcpstateful.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One running {@code search_files} search and the cursor over its results.
+ *
+ * The directory tree is walked on a fork-join pool, one task per directory,
+ * and matches are queued as they are found, so the first page can be served
+ * while the rest of the tree is still being searched. Only a few pages are
+ * queued ahead of the caller; while they go unread the walk waits. The walk
+ * stops at the depth, file-count or time limit, whichever is reached first,
+ * or when the search is closed. Each matching file is reported once; for
+ * content searches, with its first matching line. The last page served is
+ * kept, so a caller that lost a response can ask for the same page again.
+ */
+final class FileSearch implements AutoCloseable {
+
+    /**
+     * Files at least this large are memory-mapped for content scanning; smaller ones are cheaper to read.
+     */
+    static final int MAP_THRESHOLD_BYTES = 64 * 1024;
+
+    /**
+     * Longest a page waits for matches before it is served short, so a slow walk does not hold up the call.
+     */
+    static final Duration MAX_PAGE_WAIT = Duration.ofMillis(500);
+
+    /**
+     * Pages of matches queued ahead of the caller before the walk waits for it to read them.
+     */
+    static final int QUEUED_PAGES = 4;
+
+    private static final int MAX_LINE_TEXT_BYTES = 200;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Bounds that keep a search of a huge tree cheap.
+     *
+     * @param maxScanBytes files larger than this are matched by name only and never scanned
+     */
+    record Limits(int maxDepth, int maxFiles, Duration timeLimit, long maxScanBytes) {
+    }
+
+    /**
+     * A matching file; {@code line} and {@code text} are only set for content searches.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Match(String path, Integer line, String text) {
+    }
+
+    record Page(int number, List<Match> matches, boolean finished) {
+    }
+
+    private final PathMatcher names;
+    private final byte[] content;
+    private final Limits limits;
+    private final DirectoryListingCache listings;
+    private final long deadline;
+    private final LinkedBlockingQueue<Match> matches;
+    private final AtomicInteger filesVisited = new AtomicInteger();
+    private final AtomicInteger directoriesVisited = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicReference<String> stoppedBy = new AtomicReference<>();
+    private final ForkJoinTask<Void> walk;
+    private volatile boolean closed;
+    private Page lastPage;
+
+    private FileSearch(Path root, PathMatcher names, String content, Limits limits, int pageSize,
+                       DirectoryListingCache listings, ForkJoinPool pool) {
+        this.names = names;
+        this.content = content == null ? null : content.getBytes(StandardCharsets.UTF_8);
+        this.limits = limits;
+        this.listings = listings;
+        this.deadline = System.nanoTime() + limits.timeLimit().toNanos();
+        this.matches = new LinkedBlockingQueue<>(QUEUED_PAGES * pageSize);
+        this.walk = pool.submit(new DirectoryTask(root, 0));
+    }
+
+    /**
+     * Start searching the tree under {@code root} for files whose name matches
+     * and, if {@code content} is given, that contain it. At most
+     * {@link #QUEUED_PAGES} pages of {@code pageSize} matches are found ahead
+     * of the caller.
+     */
+    static FileSearch start(Path root, PathMatcher names, String content, Limits limits, int pageSize,
+                            DirectoryListingCache listings, ForkJoinPool pool) {
+        return new FileSearch(root, names, content, limits, pageSize, listings, pool);
+    }
+
+    /**
+     * Resolve {@code root} to its real path, following symbolic links, and
+     * check that it is a directory inside one of {@code allowedRoots}. An
+     * empty list allows any directory.
+     */
+    static Path checkRoot(Path root, List<String> allowedRoots) {
+        Path realRoot;
+        try {
+            realRoot = root.toRealPath();
+        } catch (IOException | SecurityException e) {
+            throw new IllegalArgumentException("Not a directory: " + root);
+        }
+        if (!Files.isDirectory(realRoot)) {
+            throw new IllegalArgumentException("Not a directory: " + root);
+        }
+        if (allowedRoots.isEmpty()) {
+            return realRoot;
+        }
+        for (String allowedRoot : allowedRoots) {
+            if (realRoot.startsWith(realPath(Paths.get(allowedRoot)))) {
+                return realRoot;
+            }
+        }
+        throw new IllegalArgumentException("Searching " + root + " is not allowed; allowed roots are " + allowedRoots);
+    }
+
+    /**
+     * Serve page {@code number}: the one after the last page served, or that
+     * last page again for a caller retrying a call whose response it lost.
+     * A null number means the next page.
+     */
+    synchronized Page page(Integer number, int pageSize) {
+        int next = lastPage == null ? 1 : lastPage.number() + 1;
+        if (number == null || number == next) {
+            return nextPage(pageSize);
+        }
+        if (lastPage != null && number == lastPage.number()) {
+            return lastPage;
+        }
+        throw new IllegalArgumentException("Page " + number + " is not available; the next page is " + next);
+    }
+
+    /**
+     * Take the next page of matches, waiting until the page is full, the walk
+     * has ended or {@link #MAX_PAGE_WAIT} (at most the time limit) has passed.
+     * A page cut short by the wait may be empty while the walk goes on.
+     */
+    synchronized Page nextPage(int pageSize) {
+        List<Match> page = new ArrayList<>(pageSize);
+        long waitDeadline = System.nanoTime() + Math.min(limits.timeLimit().toNanos(), MAX_PAGE_WAIT.toNanos());
+        try {
+            while (page.size() < pageSize) {
+                Match match = matches.poll();
+                if (match == null) {
+                    if (walk.isDone()) {
+                        // The walk queued its last match before completing
+                        match = matches.poll();
+                        if (match == null) {
+                            break;
+                        }
+                    } else {
+                        long remainingNanos = waitDeadline - System.nanoTime();
+                        if (remainingNanos <= 0) {
+                            break;
+                        }
+                        match = matches.poll(Math.min(POLL_NANOS, remainingNanos), TimeUnit.NANOSECONDS);
+                        if (match == null) {
+                            continue;
+                        }
+                    }
+                }
+                page.add(match);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        boolean finished = walk.isDone() && matches.isEmpty();
+        lastPage = new Page(lastPage == null ? 1 : lastPage.number() + 1, page, finished);
+        return lastPage;
+    }
+
+    /**
+     * Progress of the walk so far.
+     */
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("filesVisited", Math.min(filesVisited.get(), limits.maxFiles()));
+        stats.put("directoriesVisited", directoriesVisited.get());
+        stats.put("skipped", skipped.get());
+        if (stoppedBy.get() != null) {
+            stats.put("stoppedBy", stoppedBy.get());
+        }
+        return stats;
+    }
+
+    /**
+     * Stop the walk and drop any unread matches.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        matches.clear();
+    }
+
+    private boolean shouldStop() {
+        if (closed || stoppedBy.get() != null) {
+            return true;
+        }
+        if (System.nanoTime() - deadline > 0) {
+            stoppedBy.compareAndSet(null, "time_limit");
+            return true;
+        }
+        return false;
+    }
+
+    private Match scan(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < content.length) {
+                return null;
+            }
+            if (size > limits.maxScanBytes() || size > Integer.MAX_VALUE) {
+                skipped.incrementAndGet();
+                return null;
+            }
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD_BYTES) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // Fill the buffer; a file truncated meanwhile leaves it short
+                }
+                bytes.flip();
+            }
+            int at = indexOf(bytes, content);
+            return at < 0 ? null : matchAt(file, bytes, at);
+        }
+    }
+
+    /**
+     * Position of the first occurrence of {@code needle}, or -1.
+     */
+    static int indexOf(ByteBuffer haystack, byte[] needle) {
+        int last = haystack.limit() - needle.length;
+        if (needle.length == 0) {
+            return last >= 0 ? 0 : -1;
+        }
+        byte first = needle[0];
+        for (int i = 0; i <= last; i++) {
+            if (haystack.get(i) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < needle.length && haystack.get(i + j) == needle[j]) {
+                j++;
+            }
+            if (j == needle.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The match at byte {@code at}, with up to {@link #MAX_LINE_TEXT_BYTES} of
+     * its line centred on it, so a match far into a long line is still shown.
+     */
+    static Match matchAt(Path file, ByteBuffer bytes, int at) {
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < at; i++) {
+            if (bytes.get(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        int start = Math.max(lineStart, at - MAX_LINE_TEXT_BYTES / 2);
+        int end = start;
+        int windowEnd = Math.min(bytes.limit(), start + MAX_LINE_TEXT_BYTES);
+        while (end < windowEnd && bytes.get(end) != '\n') {
+            end++;
+        }
+        if (end - start < MAX_LINE_TEXT_BYTES) {
+            // The line ends before the window is full; use the room before the match instead
+            start = Math.max(lineStart, end - MAX_LINE_TEXT_BYTES);
+        }
+        // Never cut a multi-byte UTF-8 character in half
+        while (start < end && isContinuationByte(bytes.get(start))) {
+            start++;
+        }
+        while (end > start && end < bytes.limit() && isContinuationByte(bytes.get(end))) {
+            end--;
+        }
+        byte[] text = new byte[end - start];
+        bytes.get(start, text);
+        return new Match(file.toString(), line, new String(text, StandardCharsets.UTF_8).strip());
+    }
+
+    private static boolean isContinuationByte(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private static Path realPath(Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException | SecurityException e) {
+            return path.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * Search one directory, then its subdirectories in parallel.
+     */
+    private final class DirectoryTask extends RecursiveAction {
+
+        private final Path directory;
+        private final int depth;
+
+        DirectoryTask(Path directory, int depth) {
+            this.directory = directory;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (shouldStop()) {
+                return;
+            }
+            DirectoryListingCache.Listing listing;
+            try {
+                listing = listings.list(directory);
+            } catch (IOException | UncheckedIOException | SecurityException e) {
+                skipped.incrementAndGet();
+                return;
+            }
+            directoriesVisited.incrementAndGet();
+
+            for (Path file : listing.files()) {
+                if (shouldStop()) {
+                    return;
+                }
+                if (filesVisited.incrementAndGet() > limits.maxFiles()) {
+                    stoppedBy.compareAndSet(null, "max_files");
+                    return;
+                }
+                if (!names.matches(file.getFileName())) {
+                    continue;
+                }
+                Match match;
+                if (content == null) {
+                    match = new Match(file.toString(), null, null);
+                } else {
+                    try {
+                        match = scan(file);
+                    } catch (IOException | UncheckedIOException | SecurityException e) {
+                        skipped.incrementAndGet();
+                        continue;
+                    }
+                }
+                if (match != null && !queue(match)) {
+                    return;
+                }
+            }
+
+            if (depth < limits.maxDepth() && !listing.directories().isEmpty()) {
+                List<DirectoryTask> subtasks = new ArrayList<>(listing.directories().size());
+                for (Path subdirectory : listing.directories()) {
+                    subtasks.add(new DirectoryTask(subdirectory, depth + 1));
+                }
+                invokeAll(subtasks);
+            }
+        }
+
+        /**
+         * Queue a match, waiting while the queue is full; false if the search stopped meanwhile.
+         */
+        private boolean queue(Match match) {
+            try {
+                while (!matches.offer(match, POLL_NANOS, TimeUnit.NANOSECONDS)) {
+                    if (shouldStop()) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                // The pool is shutting down
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.mcpstateful.service;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Field rules for user profiles, shared by the interactive profile builder
+ * and the bulk importer so both accept and produce exactly the same records.
+ */
+final class ProfileFields {
+
+    private ProfileFields() {
+    }
+
+    /**
+     * A field counts as provided when it is non-null and not blank.
+     */
+    static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+
+    /**
+     * Split a comma-separated preference list into trimmed entries.
+     */
+    static List<String> splitPreferences(String preferences) {
+        return Arrays.stream(preferences.split(","))
+                .map(String::trim)
+                .toList();
+    }
+
+    /**
+     * Oldest age accepted; anything above is treated as a data error.
+     */
+    static final int MAX_AGE = 150;
+
+    /**
+     * Parse an age given either as a number or as numeric text.
+     * Returns null if the value is missing, not a whole number, or outside 0..{@value #MAX_AGE}.
+     */
+    static Integer parseAge(Object age) {
+        long value;
+        if (age instanceof Integer || age instanceof Long || age instanceof Short || age instanceof Byte) {
+            value = ((Number) age).longValue();
+        } else if (age instanceof Number number) {
+            double exact = number.doubleValue();
+            // Checked before narrowing, so huge values are rejected rather than saturated
+            if (exact != Math.rint(exact) || exact < 0 || exact > MAX_AGE) {
+                return null;
+            }
+            value = (long) exact;
+        } else if (age instanceof String text && hasText(text)) {
+            try {
+                value = Long.parseLong(text.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        return value >= 0 && value <= MAX_AGE ? (int) value : null;
+    }
+
+    /**
+     * Return the first rule the given fields break, or null if they form a valid profile.
+     */
+    static String firstViolation(String name, String email, Object age, String preferences) {
+        if (!hasText(name)) {
+            return "Missing parameter: name";
+        }
+        if (!hasText(email)) {
+            return "Missing parameter: email";
+        }
+        if (age == null) {
+            return "Missing parameter: age";
+        }
+        if (parseAge(age) == null) {
+            return "Invalid age: " + age + " (expected a whole number from 0 to " + MAX_AGE + ")";
+        }
+        if (!hasText(preferences)) {
+            return "Missing parameter: preferences";
+        }
+        return null;
+    }
+
+    /**
+     * Build the profile document from fields that have passed validation.
+     */
+    static Map<String, Object> toProfile(String name, String email, Object age, String preferences) {
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("name", name);
+        profile.put("email", email);
+        profile.put("age", parseAge(age));
+        profile.put("preferences", splitPreferences(preferences));
+        profile.put("created_at", LocalDateTime.now().toString());
+        return profile;
+    }
+}
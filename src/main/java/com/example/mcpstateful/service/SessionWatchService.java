@@ -0,0 +1,128 @@
+package com.example.mcpstateful.service;
+
+import com.example.mcpstateful.response.ToolResult;
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.state.SessionEvent;
+import com.example.mcpstateful.state.SessionManager;
+import io.modelcontextprotocol.server.McpSyncServerExchange;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.mcp.McpToolUtils;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.BufferOverflowStrategy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Pushes session lifecycle events to MCP clients, replacing polling of
+ * {@code list_sessions}.
+ *
+ * While a {@code watch_sessions} call is open, every matching event is sent
+ * to the caller as an MCP logging notification on the call's response stream.
+ * Each watcher has its own bounded buffer; when the client reads too slowly
+ * the oldest events are dropped and counted, and tool execution never waits.
+ */
+@Service
+public class SessionWatchService {
+
+    private static final String LOGGER_NAME = "session-events";
+    private static final int DEFAULT_MAX_EVENTS = 100;
+    private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int MAX_TIMEOUT_SECONDS = 300;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private ToolResultRenderer renderer;
+
+    @Value("${stateful-tools.session-events.buffer-size:256}")
+    private int bufferSize;
+
+    @Tool(description = "Watch session lifecycle events (created, param_added, ready, completed, expired) instead of polling list_sessions. " +
+            "Events are pushed as MCP logging notifications (logger 'session-events') while the call is open; it returns after maxEvents events " +
+            "(default 100) or timeoutSeconds (default 30, max 300). Optionally filter by tool name (e.g. 'calculate', 'create_file') or session ID.")
+    public String watchSessions(String tool, String session, Integer maxEvents, Integer timeoutSeconds,
+                                ToolContext toolContext) {
+        int eventLimit = maxEvents != null && maxEvents > 0 ? maxEvents : DEFAULT_MAX_EVENTS;
+        int timeout = timeoutSeconds != null && timeoutSeconds > 0
+                ? Math.min(timeoutSeconds, MAX_TIMEOUT_SECONDS) : DEFAULT_TIMEOUT_SECONDS;
+        Optional<McpSyncServerExchange> exchange = toolContext == null
+                ? Optional.empty() : McpToolUtils.getMcpExchange(toolContext);
+
+        // Filter before buffering so other sessions' events cannot push ours out
+        AtomicLong dropped = new AtomicLong();
+        Stream<SessionEvent> events = sessionManager.events()
+                .filter(event -> matches(tool, event.tool()) && matches(session, event.sessionId()))
+                .onBackpressureBuffer(bufferSize, event -> dropped.incrementAndGet(), BufferOverflowStrategy.DROP_OLDEST)
+                .take(eventLimit)
+                .take(Duration.ofSeconds(timeout))
+                .toStream();
+
+        int delivered = 0;
+        // Without an MCP exchange (e.g. a direct call) the events are returned in the result instead
+        List<SessionEvent> undelivered = new ArrayList<>();
+        try (events) {
+            Iterator<SessionEvent> iterator = events.iterator();
+            while (iterator.hasNext()) {
+                SessionEvent event = iterator.next();
+                if (exchange.isPresent()) {
+                    exchange.get().loggingNotification(McpSchema.LoggingMessageNotification.builder()
+                            .level(McpSchema.LoggingLevel.INFO)
+                            .logger(LOGGER_NAME)
+                            .data(renderer.json(event))
+                            .build());
+                } else {
+                    undelivered.add(event);
+                }
+                delivered++;
+            }
+        }
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("delivered", delivered);
+        payload.put("dropped", dropped.get());
+        if (exchange.isEmpty()) {
+            payload.put("events", undelivered);
+        }
+
+        int received = delivered;
+        return renderer.render(ToolResult.success("watch_sessions", payload,
+                () -> formatSummary(received, dropped.get(), undelivered)));
+    }
+
+    /**
+     * A blank filter matches everything.
+     */
+    private static boolean matches(String filter, String value) {
+        return filter == null || filter.isBlank() || filter.trim().equals(value);
+    }
+
+    private static String formatSummary(int delivered, long dropped, List<SessionEvent> events) {
+        StringBuilder text = new StringBuilder("📡 Session events watched\n\n")
+                .append("Delivered: ").append(delivered).append('\n')
+                .append("Dropped (client too slow): ").append(dropped);
+        for (SessionEvent event : events) {
+            text.append("\n- ").append(event.type().wireName())
+                .append(" `").append(event.sessionId()).append("` (").append(event.tool()).append(')');
+            if (event.parameter() != null) {
+                text.append(" parameter: ").append(event.parameter());
+            }
+            if (!event.missing().isEmpty()) {
+                text.append(" missing: ").append(event.missing());
+            }
+        }
+        return text.toString();
+    }
+}
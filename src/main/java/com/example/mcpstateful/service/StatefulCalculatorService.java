@@ -1,11 +1,18 @@
 package com.example.mcpstateful.service;
 
+import com.example.mcpstateful.response.ToolResult;
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.state.SessionClosedException;
 import com.example.mcpstateful.state.SessionManager;
+import com.example.mcpstateful.state.ToolResultCache;
 import com.example.mcpstateful.state.ToolSession;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -18,13 +25,35 @@ public class StatefulCalculatorService {
     @Autowired
     private SessionManager sessionManager;
 
+    @Autowired
+    private ToolResultRenderer renderer;
+
+    @Autowired
+    private ToolResultCache resultCache;
+
     /**
      * Calculate mathematical expressions with multi-turn parameter collection.
-     * Supports session-based stateful conversations.
+     * Supports session-based stateful conversations. Expressions may contain named
+     * variables whose values arrive over separate turns; the expression is parsed
+     * once per session and only subexpressions that depend on a newly bound
+     * variable are recomputed.
      */
     @Tool(description = "Perform mathematical calculations with multi-turn parameter collection. " +
-          "Can collect expression and format parameters across multiple interactions.")
-    public String calculate(String expression, String format, String sessionId) {
+          "Can collect expression and format parameters across multiple interactions. " +
+          "The expression may use named variables (e.g. 'a * x + b'); supply their values in " +
+          "variables as comma-separated name=value pairs (e.g. 'a=2, x=3'), in the same or later calls.")
+    public String calculate(String expression, String format, String variables, String sessionId) {
+        // Identical retries get the original result instead of running again, even while it is still running
+        String fingerprint = ToolResultCache.fingerprint("calculate", expression, format, variables);
+        try {
+            return resultCache.getOrExecute(sessionId, fingerprint,
+                    () -> calculateTurn(expression, format, variables, sessionId, fingerprint));
+        } catch (SessionClosedException e) {
+            return renderer.render(ToolResult.sessionClosed("calculate", sessionId));
+        }
+    }
+
+    private String calculateTurn(String expression, String format, String variables, String sessionId, String fingerprint) {
         
         // Define required parameters for this tool
         Map<String, String> requiredParams = new java.util.LinkedHashMap<>();
@@ -35,12 +64,9 @@ public class StatefulCalculatorService {
         String currentSessionId;
         
         if (sessionId != null && !sessionId.trim().isEmpty()) {
-            session = sessionManager.getSession(sessionId);
+            // Reuse the session, or start one under the caller's ID if it is unknown
+            session = sessionManager.getOrCreateSession(sessionId, "calculate", requiredParams);
             currentSessionId = sessionId;
-            if (session == null) {
-                // Session not found, create new one with the same ID
-                session = sessionManager.createSession(sessionId, "calculate", requiredParams);
-            }
         } else {
             // Create new session
             currentSessionId = sessionManager.generateSessionId();
@@ -56,157 +82,193 @@ public class StatefulCalculatorService {
         String outputFormat = (format != null && !format.trim().isEmpty()) ? format : "decimal";
         session.addParam("format", outputFormat);
 
+        // Variable values may arrive before or after the expression itself
+        CompiledExpression compiled;
+        try {
+            if (variables != null && !variables.trim().isEmpty()) {
+                parseVariables(variables).forEach(session::addParam);
+            }
+            compiled = compiledExpression(session);
+            if (compiled != null) {
+                // Cache every subexpression that is already fully bound
+                evaluateBound(compiled);
+            }
+        } catch (SessionClosedException e) {
+            throw e; // Reported by calculate()
+        } catch (Exception e) {
+            // Keep session active on error for retry
+            return renderer.render(ToolResult.error("calculate", currentSessionId, e.getMessage(),
+                    "Error in calculation: ", "Please call the tool again with a corrected expression."));
+        }
+
         // Check if we have all required parameters
         if (!session.isComplete()) {
             String missingParam = session.getNextMissingParam();
-            String paramDescription = requiredParams.get(missingParam);
-            
-            return String.format(
-                "I need more information to complete the calculation.\n\n" +
-                "Missing parameter: **%s**\n" +
-                "Description: %s\n\n" +
-                "Session ID: `%s`\n" +
-                "Please call the tool again with this parameter.",
-                missingParam,
-                paramDescription,
-                currentSessionId
-            );
+            String paramDescription = session.getRequiredParams().get(missingParam);
+
+            return renderer.render(ToolResult.needsInput(
+                    "calculate", currentSessionId, missingParam, paramDescription, "complete the calculation"));
+        }
+
+        // Of several concurrent final turns, only the one that claims the session calculates
+        if (!sessionManager.claimForCompletion(currentSessionId, session)) {
+            return renderer.render(ToolResult.alreadyRunning("calculate", currentSessionId));
         }
 
         // Perform the calculation
         try {
-            String expr = (String) session.getCollectedParams().get("expression");
-            String fmt = (String) session.getCollectedParams().get("format");
-
-            // Evaluate the expression
-            double result = evaluateExpression(expr);
+            String expr = compiled.source();
+            String fmt = (String) session.getParam("format");
 
-            // Format the result
-            String formattedResult = formatResult(result, fmt);
+            // Evaluate and format the expression
+            Map<String, Object> payload = evaluate(compiled, fmt);
 
             // Clean up the session after successful completion
-            sessionManager.deleteSession(currentSessionId);
+            sessionManager.completeSession(currentSessionId);
 
-            return String.format("Expression: %s\nResult: %s", expr, formattedResult);
+            String response = renderer.render(ToolResult.success("calculate", payload,
+                    () -> "Expression: " + expr + "\n" +
+                          (compiled.variables().isEmpty() ? "" : "Variables: " + payload.get("variables") + "\n") +
+                          "Result: " + payload.get("result")));
+            return resultCache.put(sessionId, fingerprint, response);
 
+        } catch (SessionClosedException e) {
+            throw e; // Reported by calculate()
         } catch (Exception e) {
             // Keep session active on error for retry
-            return String.format(
-                "Error in calculation: %s\n\n" +
-                "Session ID: `%s`\n" +
-                "Please call the tool again with a corrected expression.",
-                e.getMessage(), 
-                currentSessionId
-            );
+            return renderer.render(ToolResult.error("calculate", currentSessionId, e.getMessage(),
+                    "Error in calculation: ", "Please call the tool again with a corrected expression."));
+        } finally {
+            sessionManager.releaseClaim(session);
         }
     }
 
     /**
-     * Simple expression evaluator for basic mathematical operations.
+     * Evaluate an expression without variables and format the result.
+     * Also used by the pipeline runner; returns the payload reported to the client.
      */
-    private double evaluateExpression(String expression) {
-        try {
-            // Clean up the expression
-            expression = expression.replaceAll("\\s+", "");
-            
-            // Handle constants
-            expression = expression.replace("pi", String.valueOf(Math.PI));
-            expression = expression.replace("e", String.valueOf(Math.E));
-            
-            // Handle basic math functions
-            expression = handleMathFunctions(expression);
-            
-            // Parse and evaluate
-            return parseExpression(expression);
-            
-        } catch (Exception e) {
-            throw new RuntimeException("Unable to evaluate expression: " + expression + ". " + e.getMessage());
-        }
+    Map<String, Object> evaluate(String expression, String format) {
+        return evaluate(compile(expression), format);
     }
 
-    private String handleMathFunctions(String expr) {
-        // Handle sqrt function
-        while (expr.contains("sqrt(")) {
-            int start = expr.indexOf("sqrt(");
-            int end = findMatchingParen(expr, start + 4);
-            if (end == -1) throw new RuntimeException("Unmatched parentheses in sqrt function");
-            
-            String inner = expr.substring(start + 5, end);
-            double result = Math.sqrt(parseExpression(inner));
-            expr = expr.substring(0, start) + result + expr.substring(end + 1);
-        }
-        return expr;
+    private Map<String, Object> evaluate(CompiledExpression compiled, String format) {
+        Double result;
+        Map<String, Double> bindings;
+        // One snapshot, so a concurrent turn re-binding a variable cannot split the result from the values shown
+        synchronized (compiled) {
+            result = evaluateBound(compiled);
+            bindings = compiled.bindings();
+        }
+        if (result == null) {
+            List<String> unbound = new ArrayList<>(compiled.variables());
+            unbound.removeAll(bindings.keySet());
+            throw new IllegalArgumentException("Unable to evaluate expression: " + compiled.source() +
+                    ". No value for variables " + unbound);
+        }
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("expression", compiled.source());
+        if (!compiled.variables().isEmpty()) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            compiled.variables().forEach(variable -> values.put(variable, formatResult(bindings.get(variable), "decimal")));
+            payload.put("variables", values);
+        }
+        payload.put("format", format);
+        payload.put("result", formatResult(result, format));
+        return payload;
     }
 
-    private double parseExpression(String expr) {
-        // Handle simple numbers
-        if (expr.matches("-?\\d+(\\.\\d+)?")) {
-            return Double.parseDouble(expr);
+    /**
+     * Return the session's parsed expression, parsing it only when the expression text changed,
+     * and bind every collected variable value to it.
+     */
+    private CompiledExpression compiledExpression(ToolSession session) {
+        String expr = (String) session.getParam("expression");
+        if (expr == null) {
+            return null;
         }
 
-        // Handle parentheses
-        while (expr.startsWith("(") && findMatchingParen(expr, 0) == expr.length() - 1) {
-            expr = expr.substring(1, expr.length() - 1);
+        CompiledExpression compiled = session.getToolState() instanceof CompiledExpression previous
+                && previous.source().equals(expr) ? previous : null;
+        if (compiled == null) {
+            compiled = compile(expr);
+            if (session.getToolState() instanceof CompiledExpression replaced) {
+                // The expression was replaced; stop asking for variables it no longer uses
+                for (String variable : replaced.variables()) {
+                    if (!compiled.variables().contains(variable)) {
+                        session.dropRequirement(variable);
+                    }
+                }
+            }
+            for (String variable : compiled.variables()) {
+                checkVariableName(variable);
+                session.requireParam(variable,
+                        "Value for variable '" + variable + "' (pass it as variables=\"" + variable + "=<number>\")");
+            }
+            session.setToolState(compiled);
         }
 
-        // Find operators (right to left for correct precedence)
-        int lastAddSub = findLastOperator(expr, "+-");
-        if (lastAddSub != -1) {
-            char op = expr.charAt(lastAddSub);
-            String left = expr.substring(0, lastAddSub);
-            String right = expr.substring(lastAddSub + 1);
-            
-            if (op == '+') {
-                return parseExpression(left) + parseExpression(right);
-            } else {
-                return parseExpression(left) - parseExpression(right);
+        // Re-binding an unchanged value keeps the cached subexpressions
+        for (String variable : compiled.variables()) {
+            Object value = session.getParam(variable);
+            if (value instanceof Number number) {
+                compiled.bind(variable, number.doubleValue());
             }
         }
+        return compiled;
+    }
 
-        int lastMulDiv = findLastOperator(expr, "*/");
-        if (lastMulDiv != -1) {
-            char op = expr.charAt(lastMulDiv);
-            String left = expr.substring(0, lastMulDiv);
-            String right = expr.substring(lastMulDiv + 1);
-            
-            if (op == '*') {
-                return parseExpression(left) * parseExpression(right);
-            } else {
-                double divisor = parseExpression(right);
-                if (divisor == 0) throw new ArithmeticException("Division by zero");
-                return parseExpression(left) / divisor;
+    /**
+     * Parse comma-separated name=value pairs. Values may be constant expressions such as 'sqrt(2)'.
+     */
+    private Map<String, Object> parseVariables(String variables) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String assignment : variables.split("[,;]")) {
+            if (assignment.isBlank()) {
+                continue;
             }
+            int equals = assignment.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected name=value but got '" + assignment.trim() + "'");
+            }
+            String name = assignment.substring(0, equals).trim();
+            checkVariableName(name);
+            CompiledExpression value = compile(assignment.substring(equals + 1));
+            if (!value.variables().isEmpty()) {
+                throw new IllegalArgumentException("Value of variable '" + name + "' must not use other variables");
+            }
+            values.put(name, evaluateBound(value));
         }
+        return values;
+    }
 
-        // If we get here, try to parse as a number
-        return Double.parseDouble(expr);
+    private void checkVariableName(String name) {
+        if (!name.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid variable name '" + name + "'");
+        }
+        if (name.equals("expression") || name.equals("format") || name.equals("variables")) {
+            throw new IllegalArgumentException("'" + name + "' is reserved and cannot be used as a variable name");
+        }
     }
 
-    private int findLastOperator(String expr, String operators) {
-        int level = 0;
-        for (int i = expr.length() - 1; i >= 0; i--) {
-            char c = expr.charAt(i);
-            if (c == ')') level++;
-            else if (c == '(') level--;
-            else if (level == 0 && operators.indexOf(c) != -1) {
-                // Make sure it's not a negative sign at the beginning
-                if (c == '-' && (i == 0 || "+-*/(".indexOf(expr.charAt(i - 1)) != -1)) {
-                    continue;
-                }
-                return i;
-            }
+    private Double evaluateBound(CompiledExpression compiled) {
+        try {
+            return compiled.evaluateBound();
+        } catch (ArithmeticException e) {
+            throw evaluationError(compiled.source().trim(), e);
         }
-        return -1;
     }
 
-    private int findMatchingParen(String expr, int start) {
-        int count = 1;
-        for (int i = start + 1; i < expr.length(); i++) {
-            if (expr.charAt(i) == '(') count++;
-            else if (expr.charAt(i) == ')') count--;
-            if (count == 0) return i;
+    private CompiledExpression compile(String expression) {
+        try {
+            return CompiledExpression.compile(expression);
+        } catch (IllegalArgumentException e) {
+            throw evaluationError(expression, e);
         }
-        return -1;
+    }
+
+    private IllegalArgumentException evaluationError(String expression, Exception cause) {
+        return new IllegalArgumentException("Unable to evaluate expression: " + expression + ". " + cause.getMessage());
     }
 
     /**
@@ -0,0 +1,236 @@
+package com.example.mcpstateful.service;
+
+import com.example.mcpstateful.response.ToolResult;
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.state.SessionClosedException;
+import com.example.mcpstateful.state.SessionManager;
+import com.example.mcpstateful.state.ToolResultCache;
+import com.example.mcpstateful.state.ToolSession;
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Stateful file search, the read-side companion of create_file.
+ * Collects the search root and file name pattern across turns, walks the tree
+ * in parallel within depth, file-count and time limits, and returns matches
+ * one page at a time. The session is the cursor: it stays open while pages
+ * remain and is closed with the last one. Roots must lie inside one of the
+ * configured allowed roots.
+ */
+@Service
+public class StatefulFileSearchService {
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private ToolResultRenderer renderer;
+
+    @Autowired
+    private ToolResultCache resultCache;
+
+    @Autowired
+    private DirectoryListingCache listingCache;
+
+    @Value("${stateful-tools.file-search.max-depth:16}")
+    private int defaultMaxDepth;
+
+    @Value("${stateful-tools.file-search.max-files:100000}")
+    private int maxFiles;
+
+    @Value("${stateful-tools.file-search.time-limit-ms:10000}")
+    private long timeLimitMillis;
+
+    @Value("${stateful-tools.file-search.max-scan-bytes:67108864}")
+    private long maxScanBytes;
+
+    @Value("${stateful-tools.file-search.page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${stateful-tools.file-search.allowed-roots:}")
+    private String[] allowedRoots;
+
+    // Worker threads are created on demand and are daemons, so an idle pool costs nothing
+    private final ForkJoinPool searchPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    @Tool(description = "Search for files under a directory by name and optionally by text content. " +
+          "Can collect root and name_pattern (a glob such as '*.java', or '*' for all files) across multiple interactions. " +
+          "Results come back a page at a time (pageSize, default 50); while more remain, call again with the returned " +
+          "session ID and page set to the next page number. Asking for the page just served again returns it again. " +
+          "maxDepth limits how deep below root the search goes (default 16).")
+    public String searchFiles(String root, String namePattern, String content, Integer maxDepth, Integer pageSize,
+                              Integer page, String sessionId) {
+        // Identical retries get the original result instead of running again, even while it is still running
+        String fingerprint = ToolResultCache.fingerprint("search_files", root, namePattern, content, maxDepth, pageSize,
+                page);
+        try {
+            return resultCache.getOrExecute(sessionId, fingerprint,
+                    () -> searchFilesTurn(root, namePattern, content, maxDepth, pageSize, page, sessionId, fingerprint));
+        } catch (SessionClosedException e) {
+            return renderer.render(ToolResult.sessionClosed("search_files", sessionId));
+        }
+    }
+
+    private String searchFilesTurn(String root, String namePattern, String content, Integer maxDepth,
+                                   Integer pageSize, Integer page, String sessionId, String fingerprint) {
+
+        // Define required parameters
+        Map<String, String> requiredParams = new java.util.LinkedHashMap<>();
+        requiredParams.put("root", "Directory to search (e.g., '/tmp')");
+        requiredParams.put("name_pattern", "Glob matched against file names (e.g., '*.txt', or '*' for all files)");
+
+        // Get or create session
+        ToolSession session;
+        String currentSessionId;
+
+        if (sessionId != null && !sessionId.trim().isEmpty()) {
+            // Reuse the session, or start one under the caller's ID if it is unknown
+            session = sessionManager.getOrCreateSession(sessionId, "search_files", requiredParams);
+            currentSessionId = sessionId;
+        } else {
+            currentSessionId = sessionManager.generateSessionId();
+            session = sessionManager.createSession(currentSessionId, "search_files", requiredParams);
+        }
+
+        int effectivePageSize = pageSize != null && pageSize > 0 ? Math.min(pageSize, MAX_PAGE_SIZE) : defaultPageSize;
+
+        // A search is already running in this session: serve its next page
+        if (session.getToolState() instanceof FileSearch search) {
+            return servePage(search, page, effectivePageSize, sessionId, currentSessionId, fingerprint);
+        }
+
+        // Collect provided parameters
+        if (root != null && !root.trim().isEmpty()) {
+            session.addParam("root", root.trim());
+        }
+        if (namePattern != null && !namePattern.trim().isEmpty()) {
+            session.addParam("name_pattern", namePattern.trim());
+        }
+        if (content != null && !content.isEmpty()) {
+            session.addParam("content", content);
+        }
+        if (maxDepth != null && maxDepth >= 0) {
+            session.addParam("max_depth", maxDepth);
+        }
+
+        // Check if we have all required parameters
+        if (!session.isComplete()) {
+            String missingParam = session.getNextMissingParam();
+            String paramDescription = requiredParams.get(missingParam);
+
+            return renderer.render(ToolResult.needsInput(
+                    "search_files", currentSessionId, missingParam, paramDescription, "search the files"));
+        }
+
+        // Of several concurrent final turns, only the one that claims the session starts a search
+        if (!sessionManager.claimForCompletion(currentSessionId, session)) {
+            return renderer.render(ToolResult.alreadyRunning("search_files", currentSessionId));
+        }
+
+        // Start the search
+        try {
+            Path searchRoot = FileSearch.checkRoot(Paths.get((String) session.getParam("root")),
+                    Arrays.stream(allowedRoots).map(String::strip).filter(allowed -> !allowed.isEmpty()).toList());
+            PathMatcher names = FileSystems.getDefault().getPathMatcher("glob:" + session.getParam("name_pattern"));
+            Object depth = session.getParam("max_depth");
+            FileSearch.Limits limits = new FileSearch.Limits(
+                    depth instanceof Integer requested ? requested : defaultMaxDepth,
+                    maxFiles, Duration.ofMillis(timeLimitMillis), maxScanBytes);
+
+            FileSearch search = FileSearch.start(searchRoot, names, (String) session.getParam("content"),
+                    limits, effectivePageSize, listingCache, searchPool);
+            session.setToolState(search);
+            return servePage(search, page, effectivePageSize, sessionId, currentSessionId, fingerprint);
+
+        } catch (IllegalArgumentException e) {
+            // Keep session active on error for retry
+            return renderer.render(ToolResult.error("search_files", currentSessionId, e.getMessage(),
+                    "❌ Error searching files: ", "Please call the tool again with corrected parameters."));
+        } finally {
+            // The session stays open as the cursor; later turns page through the search
+            sessionManager.releaseClaim(session);
+        }
+    }
+
+    /**
+     * Stop any walks still running when the application shuts down.
+     */
+    @PreDestroy
+    void shutDownSearches() {
+        searchPool.shutdownNow();
+    }
+
+    /**
+     * Serve the requested page from the cursor; the last page closes the session.
+     */
+    private String servePage(FileSearch search, Integer number, int pageSize, String sessionId,
+                             String currentSessionId, String fingerprint) {
+        FileSearch.Page page;
+        try {
+            page = search.page(number, pageSize);
+        } catch (IllegalArgumentException e) {
+            return renderer.render(ToolResult.error("search_files", currentSessionId, e.getMessage(),
+                    "❌ Error searching files: ", "Please call the tool again with the next page number."));
+        }
+        Map<String, Object> stats = search.stats();
+        if (page.finished()) {
+            // Clean up session after the last page
+            sessionManager.completeSession(currentSessionId);
+        }
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("page", page.number());
+        payload.put("matches", page.matches());
+        payload.put("hasMore", !page.finished());
+        if (!page.finished()) {
+            payload.put("sessionId", currentSessionId);
+        }
+        payload.put("stats", stats);
+
+        String response = renderer.render(ToolResult.success("search_files", payload,
+                () -> formatPage(page, stats, currentSessionId)));
+        return page.finished() ? resultCache.put(sessionId, fingerprint, response) : response;
+    }
+
+    private String formatPage(FileSearch.Page page, Map<String, Object> stats, String sessionId) {
+        StringBuilder result = new StringBuilder("🔎 File search results (page ").append(page.number()).append(")\n\n");
+        if (page.matches().isEmpty()) {
+            result.append("No matching files.\n");
+        }
+        for (FileSearch.Match match : page.matches()) {
+            result.append("- ").append(match.path());
+            if (match.line() != null) {
+                result.append(':').append(match.line()).append(": ").append(match.text());
+            }
+            result.append('\n');
+        }
+        result.append("\nFiles visited: ").append(stats.get("filesVisited"))
+              .append(" in ").append(stats.get("directoriesVisited")).append(" directories");
+        if (stats.containsKey("stoppedBy")) {
+            result.append("\nSearch stopped early: ").append(stats.get("stoppedBy").equals("time_limit")
+                    ? "time limit reached" : "file limit reached");
+        }
+        if (!page.finished()) {
+            result.append("\n\nMore results are available.\n")
+                  .append("Session ID: `").append(sessionId).append("`\n")
+                  .append("Call the tool again with this session ID and page ").append(page.number() + 1)
+                  .append(" for the next page.");
+        }
+        return result.toString();
+    }
+}
@@ -1,6 +1,10 @@
 package com.example.mcpstateful.service;
 
+import com.example.mcpstateful.response.ToolResult;
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.state.SessionClosedException;
 import com.example.mcpstateful.state.SessionManager;
+import com.example.mcpstateful.state.ToolResultCache;
 import com.example.mcpstateful.state.ToolSession;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +14,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -22,12 +29,31 @@ public class StatefulFileService {
     @Autowired
     private SessionManager sessionManager;
 
+    @Autowired
+    private ToolResultRenderer renderer;
+
+    @Autowired
+    private ToolResultCache resultCache;
+
     /**
      * Create a file by collecting filename and content across multiple interactions.
      */
     @Tool(description = "Create a file with specified content using multi-turn parameter collection. " +
-          "Can collect file_path and content parameters across multiple interactions.")
+          "Can collect file_path and content parameters across multiple interactions. " +
+          "An identical call within the result-cache TTL (5 minutes by default) returns the first result " +
+          "instead of writing the file again.")
     public String createFile(String filePath, String content, String sessionId) {
+        // Identical retries get the original result instead of running again, even while it is still running
+        String fingerprint = ToolResultCache.fingerprint("create_file", filePath, content);
+        try {
+            return resultCache.getOrExecute(sessionId, fingerprint,
+                    () -> createFileTurn(filePath, content, sessionId, fingerprint));
+        } catch (SessionClosedException e) {
+            return renderer.render(ToolResult.sessionClosed("create_file", sessionId));
+        }
+    }
+
+    private String createFileTurn(String filePath, String content, String sessionId, String fingerprint) {
         
         // Define required parameters
         Map<String, String> requiredParams = new java.util.LinkedHashMap<>();
@@ -39,11 +65,9 @@ public class StatefulFileService {
         String currentSessionId;
         
         if (sessionId != null && !sessionId.trim().isEmpty()) {
-            session = sessionManager.getSession(sessionId);
+            // Reuse the session, or start one under the caller's ID if it is unknown
+            session = sessionManager.getOrCreateSession(sessionId, "create_file", requiredParams);
             currentSessionId = sessionId;
-            if (session == null) {
-                session = sessionManager.createSession(sessionId, "create_file", requiredParams);
-            }
         } else {
             currentSessionId = sessionManager.generateSessionId();
             session = sessionManager.createSession(currentSessionId, "create_file", requiredParams);
@@ -53,7 +77,8 @@ public class StatefulFileService {
         if (filePath != null && !filePath.trim().isEmpty()) {
             // Validate file path
             if (filePath.trim().isEmpty()) {
-                return "Error: File path cannot be empty.\n\nSession ID: `" + currentSessionId + "`\nPlease provide a valid file path.";
+                return renderer.render(ToolResult.error("create_file", currentSessionId, "File path cannot be empty.",
+                        "Error: ", "Please provide a valid file path."));
             }
             session.addParam("file_path", filePath);
         }
@@ -66,89 +91,101 @@ public class StatefulFileService {
         if (!session.isComplete()) {
             String missingParam = session.getNextMissingParam();
             String paramDescription = requiredParams.get(missingParam);
-            
-            return String.format(
-                "I need more information to create the file.\n\n" +
-                "Missing parameter: **%s**\n" +
-                "Description: %s\n\n" +
-                "Session ID: `%s`\n" +
-                "Please call the tool again with this parameter.",
-                missingParam,
-                paramDescription,
-                currentSessionId
-            );
+
+            return renderer.render(ToolResult.needsInput(
+                    "create_file", currentSessionId, missingParam, paramDescription, "create the file"));
+        }
+
+        // Of several concurrent final turns, only the one that claims the session writes the file
+        if (!sessionManager.claimForCompletion(currentSessionId, session)) {
+            return renderer.render(ToolResult.alreadyRunning("create_file", currentSessionId));
         }
 
         // Create the file
         try {
-            String path = (String) session.getCollectedParams().get("file_path");
-            String fileContent = (String) session.getCollectedParams().get("content");
-
-            Path filePath2 = Paths.get(path);
-            
-            // Create parent directories if they don't exist
-            Path parentDir = filePath2.getParent();
-            if (parentDir != null && !Files.exists(parentDir)) {
-                Files.createDirectories(parentDir);
-            }
+            String path = (String) session.getParam("file_path");
+            String fileContent = (String) session.getParam("content");
 
-            // Write the file
-            Files.writeString(filePath2, fileContent);
+            Map<String, Object> payload = writeFile(path, fileContent);
 
             // Clean up session after successful completion
-            sessionManager.deleteSession(currentSessionId);
+            sessionManager.completeSession(currentSessionId);
 
-            return String.format(
-                "✅ Successfully created file: %s\n" +
-                "Content length: %d characters\n" +
-                "File size: %d bytes",
-                path,
-                fileContent.length(),
-                Files.size(filePath2)
-            );
+            String response = renderer.render(ToolResult.success("create_file", payload,
+                    () -> "✅ Successfully created file: " + path + "\n" +
+                          "Content length: " + fileContent.length() + " characters\n" +
+                          "File size: " + payload.get("sizeBytes") + " bytes"));
+            return resultCache.put(sessionId, fingerprint, response);
 
         } catch (IOException e) {
             // Keep session active on error for retry
-            return String.format(
-                "❌ Error creating file: %s\n\n" +
-                "Session ID: `%s`\n" +
-                "Please call the tool again with corrected parameters.",
-                e.getMessage(),
-                currentSessionId
-            );
+            return renderer.render(ToolResult.error("create_file", currentSessionId, e.getMessage(),
+                    "❌ Error creating file: ", "Please call the tool again with corrected parameters."));
+        } finally {
+            sessionManager.releaseClaim(session);
         }
     }
 
+    /**
+     * Write content to a file, creating parent directories as needed.
+     * Also used by the pipeline runner; returns the payload reported to the client.
+     */
+    Map<String, Object> writeFile(String path, String fileContent) throws IOException {
+        Path filePath = Paths.get(path);
+
+        // Create parent directories if they don't exist
+        Path parentDir = filePath.getParent();
+        if (parentDir != null && !Files.exists(parentDir)) {
+            Files.createDirectories(parentDir);
+        }
+
+        // Write the file
+        Files.writeString(filePath, fileContent);
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("path", path);
+        payload.put("contentLength", fileContent.length());
+        payload.put("sizeBytes", Files.size(filePath));
+        return payload;
+    }
+
     /**
      * List active sessions for debugging/management.
      */
     @Tool(description = "List all active conversation sessions for debugging and management")
     public String listSessions() {
         Map<String, ToolSession> sessions = sessionManager.listSessions();
-        
+
+        List<Map<String, Object>> payload = new ArrayList<>(sessions.size());
+        for (Map.Entry<String, ToolSession> entry : sessions.entrySet()) {
+            ToolSession session = entry.getValue();
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("sessionId", entry.getKey());
+            summary.put("tool", session.getToolName());
+            summary.put("collected", List.copyOf(session.getCollectedParams().keySet()));
+            summary.put("missing", List.copyOf(session.getMissingParams()));
+            summary.put("complete", session.isComplete());
+            payload.add(summary);
+        }
+
+        return renderer.render(ToolResult.success("list_sessions", payload, () -> formatSessions(payload)));
+    }
+
+    private String formatSessions(List<Map<String, Object>> sessions) {
         if (sessions.isEmpty()) {
             return "No active sessions found.";
         }
 
         StringBuilder result = new StringBuilder("Active Sessions:\n\n");
-        for (Map.Entry<String, ToolSession> entry : sessions.entrySet()) {
-            String sessionId = entry.getKey();
-            ToolSession session = entry.getValue();
-            
-            result.append(String.format(
-                "Session ID: `%s`\n" +
-                "Tool: %s\n" +
-                "Collected Parameters: %s\n" +
-                "Missing Parameters: %s\n" +
-                "Complete: %s\n\n",
-                sessionId,
-                session.getToolName(),
-                session.getCollectedParams().keySet(),
-                session.getMissingParams(),
-                session.isComplete() ? "✅" : "❌"
-            ));
+        for (Map<String, Object> session : sessions) {
+            result.append("Session ID: `").append(session.get("sessionId")).append("`\n")
+                  .append("Tool: ").append(session.get("tool")).append('\n')
+                  .append("Collected Parameters: ").append(session.get("collected")).append('\n')
+                  .append("Missing Parameters: ").append(session.get("missing")).append('\n')
+                  .append("Complete: ").append(Boolean.TRUE.equals(session.get("complete")) ? "✅" : "❌")
+                  .append("\n\n");
         }
 
         return result.toString().trim();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,386 @@
+package com.example.mcpstateful.service;
+
+import com.example.mcpstateful.response.ToolResult;
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.state.SessionClosedException;
+import com.example.mcpstateful.state.SessionManager;
+import com.example.mcpstateful.state.ToolResultCache;
+import com.example.mcpstateful.state.ToolSession;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stateful pipeline runner.
+ * Lets one session declare a chain of the existing tools, bind the outputs of
+ * earlier steps to inputs of later ones, and collect only the inputs nobody
+ * provides. Once everything is known the whole chain runs server-side in a
+ * single call instead of one model round trip per tool.
+ */
+@Service
+public class StatefulPipelineService {
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private ToolResultRenderer renderer;
+
+    @Autowired
+    private ToolResultCache resultCache;
+
+    @Autowired
+    private StatefulCalculatorService calculatorService;
+
+    @Autowired
+    private StatefulFileService fileService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Tools that can be used as pipeline steps, by tool name.
+     */
+    private final Map<String, StepType> stepTypes = Map.of(
+            "calculate", new StepType(
+                    params("expression", "Mathematical expression to evaluate (e.g., '2 + 2', 'sqrt(16)')"),
+                    Map.of("format", "decimal"),
+                    List.of("expression", "format", "result"),
+                    inputs -> calculatorService.evaluate(text(inputs.get("expression")), text(inputs.get("format")))),
+            "create_file", new StepType(
+                    params("file_path", "Path where the file should be created (e.g., '/tmp/example.txt')",
+                           "content", "Content to write to the file"),
+                    Map.of(),
+                    List.of("path", "contentLength", "sizeBytes"),
+                    inputs -> fileService.writeFile(text(inputs.get("file_path")), text(inputs.get("content")))),
+            "build_profile", new StepType(
+                    params("name", "User's full name",
+                           "email", "User's email address",
+                           "age", "User's age (as a number)",
+                           "preferences", "User preferences or interests (comma-separated list)"),
+                    Map.of(),
+                    List.of("name", "email", "age", "preferences", "created_at"),
+                    this::buildProfile)
+    );
+
+    @Tool(description = "Run a chain of tools (calculate, create_file, build_profile) server-side in one session. " +
+          "steps is a JSON array such as [{\"tool\":\"calculate\"},{\"tool\":\"create_file\",\"bind\":{\"content\":\"calculate.result\"}}]; " +
+          "bind maps a step input to an earlier step's output (step.output). An optional \"as\" names a step. " +
+          "params is a JSON object of inputs keyed step.input, e.g. {\"calculate.expression\":\"2+2\"}. " +
+          "Missing inputs are requested across multiple interactions.")
+    public String runPipeline(String steps, String params, String sessionId) {
+        // Identical retries get the original result instead of running again, even while it is still running
+        String fingerprint = ToolResultCache.fingerprint("run_pipeline", steps, params);
+        try {
+            return resultCache.getOrExecute(sessionId, fingerprint,
+                    () -> runPipelineTurn(steps, params, sessionId, fingerprint));
+        } catch (SessionClosedException e) {
+            return renderer.render(ToolResult.sessionClosed("run_pipeline", sessionId));
+        }
+    }
+
+    private String runPipelineTurn(String steps, String params, String sessionId, String fingerprint) {
+
+        // Define required parameters
+        Map<String, String> requiredParams = new LinkedHashMap<>();
+        requiredParams.put("steps", "JSON array of pipeline steps, e.g. [{\"tool\":\"calculate\"},{\"tool\":\"create_file\",\"bind\":{\"content\":\"calculate.result\"}}]");
+
+        // Get or create session
+        ToolSession session;
+        String currentSessionId;
+
+        if (sessionId != null && !sessionId.trim().isEmpty()) {
+            // Reuse the session, or start one under the caller's ID if it is unknown
+            session = sessionManager.getOrCreateSession(sessionId, "run_pipeline", requiredParams);
+            currentSessionId = sessionId;
+        } else {
+            currentSessionId = sessionManager.generateSessionId();
+            session = sessionManager.createSession(currentSessionId, "run_pipeline", requiredParams);
+        }
+
+        // Collect provided parameters
+        List<Step> pipeline;
+        try {
+            if (params != null && !params.trim().isEmpty()) {
+                parseParams(params).forEach(session::addParam);
+            }
+            if (steps != null && !steps.trim().isEmpty()) {
+                parseSteps(steps);
+                session.addParam("steps", steps);
+            }
+
+            String declaredSteps = (String) session.getParam("steps");
+            pipeline = declaredSteps == null ? List.of() : parseSteps(declaredSteps);
+            if (declaredSteps != null) {
+                List<String> unknown = new ArrayList<>();
+                for (String name : session.getCollectedParams().keySet()) {
+                    if (!name.equals("steps") && !acceptsParam(pipeline, name)) {
+                        unknown.add(name);
+                    }
+                }
+                if (!unknown.isEmpty()) {
+                    // Drop them so a corrected retry is not rejected again
+                    unknown.forEach(session::removeParam);
+                    throw new IllegalArgumentException("Unknown pipeline parameters " + unknown);
+                }
+            }
+
+            // Only inputs that are neither bound to an earlier step nor defaulted are asked for
+            Map<String, String> unbound = new LinkedHashMap<>();
+            for (Step step : pipeline) {
+                for (Map.Entry<String, String> input : step.type().required().entrySet()) {
+                    if (!step.bindings().containsKey(input.getKey())) {
+                        unbound.put(step.name() + "." + input.getKey(), "[" + step.name() + "] " + input.getValue());
+                    }
+                }
+            }
+            // Steps may have been redeclared; stop asking for inputs the current pipeline does not take
+            for (String name : List.copyOf(session.getRequiredParams().keySet())) {
+                if (!name.equals("steps") && !unbound.containsKey(name)) {
+                    session.dropRequirement(name);
+                }
+            }
+            unbound.forEach(session::requireParam);
+        } catch (IllegalArgumentException e) {
+            return renderer.render(ToolResult.error("run_pipeline", currentSessionId, e.getMessage(),
+                    "❌ Invalid pipeline: ", "Please call the tool again with corrected steps or params."));
+        }
+
+        // Check if we have all required parameters
+        if (!session.isComplete()) {
+            String missingParam = session.getNextMissingParam();
+            String paramDescription = session.getRequiredParams().get(missingParam);
+
+            return renderer.render(ToolResult.needsInput(
+                    "run_pipeline", currentSessionId, missingParam, paramDescription, "run the pipeline"));
+        }
+
+        // Of several concurrent final turns, only the one that claims the session runs the steps
+        if (!sessionManager.claimForCompletion(currentSessionId, session)) {
+            return renderer.render(ToolResult.alreadyRunning("run_pipeline", currentSessionId));
+        }
+
+        // Run every step in order, feeding outputs forward. Steps that completed in an earlier
+        // attempt with the same inputs are not run again, so a retry resumes at the failed step.
+        Map<String, Map<String, Object>> outputs = new LinkedHashMap<>();
+        try {
+            String declaredSteps = (String) session.getParam("steps");
+            PipelineProgress progress = session.getToolState() instanceof PipelineProgress previous
+                    && previous.steps().equals(declaredSteps) ? previous : new PipelineProgress(declaredSteps);
+            session.setToolState(progress);
+            for (Step step : pipeline) {
+                try {
+                    Map<String, Object> inputs = resolveInputs(step, session, outputs);
+                    CompletedStep completed = progress.completed().get(step.name());
+                    if (completed == null || !completed.inputs().equals(inputs)) {
+                        completed = new CompletedStep(inputs, step.type().action().run(inputs));
+                        progress.completed().put(step.name(), completed);
+                    }
+                    outputs.put(step.name(), completed.output());
+                } catch (SessionClosedException e) {
+                    throw e; // Reported by runPipeline()
+                } catch (Exception e) {
+                    // Keep session active on error for retry
+                    return renderer.render(ToolResult.error("run_pipeline", currentSessionId,
+                            "Step '" + step.name() + "' failed: " + e.getMessage(),
+                            "❌ Pipeline error: ", "Please call the tool again with corrected params."));
+                }
+            }
+
+            // Clean up session after successful completion
+            sessionManager.completeSession(currentSessionId);
+        } finally {
+            sessionManager.releaseClaim(session);
+        }
+
+        List<Map<String, Object>> payload = new ArrayList<>(outputs.size());
+        for (Step step : pipeline) {
+            Map<String, Object> stepResult = new LinkedHashMap<>();
+            stepResult.put("step", step.name());
+            stepResult.put("tool", step.tool());
+            stepResult.put("output", outputs.get(step.name()));
+            payload.add(stepResult);
+        }
+
+        String response = renderer.render(ToolResult.success("run_pipeline", payload, () -> {
+            StringBuilder result = new StringBuilder("✅ Pipeline completed (")
+                    .append(pipeline.size()).append(pipeline.size() == 1 ? " step)" : " steps)");
+            for (int i = 0; i < pipeline.size(); i++) {
+                Step step = pipeline.get(i);
+                result.append("\n\n").append(i + 1).append(". ").append(step.name());
+                outputs.get(step.name()).forEach((key, value) ->
+                        result.append("\n   ").append(key).append(": ").append(value));
+            }
+            return result.toString();
+        }));
+        return resultCache.put(sessionId, fingerprint, response);
+    }
+
+    /**
+     * Parse and check the step declarations: known tools, unique names, and
+     * bindings that refer to outputs of earlier steps.
+     */
+    private List<Step> parseSteps(String json) {
+        JsonNode root = readJson(json, "steps");
+        if (!root.isArray() || root.isEmpty()) {
+            throw new IllegalArgumentException("steps must be a non-empty JSON array");
+        }
+
+        List<Step> pipeline = new ArrayList<>(root.size());
+        Map<String, StepType> earlier = new HashMap<>();
+        for (JsonNode node : root) {
+            String tool = node.path("tool").asText("");
+            StepType type = stepTypes.get(tool);
+            if (type == null) {
+                throw new IllegalArgumentException("Unsupported pipeline tool '" + tool + "' (expected one of " +
+                        stepTypes.keySet().stream().sorted().toList() + ")");
+            }
+            String name = node.path("as").asText(tool);
+            if (name.isEmpty() || name.contains(".") || earlier.containsKey(name)) {
+                throw new IllegalArgumentException("Step name '" + name + "' must be unique and must not contain '.'; " +
+                        "use \"as\" to name repeated tools");
+            }
+
+            Map<String, String> bindings = new LinkedHashMap<>();
+            node.path("bind").fields().forEachRemaining(binding -> {
+                String input = binding.getKey();
+                String source = binding.getValue().asText("");
+                if (!type.required().containsKey(input) && !type.defaults().containsKey(input)) {
+                    throw new IllegalArgumentException("Step '" + name + "' has no input '" + input + "'");
+                }
+                int dot = source.indexOf('.');
+                StepType sourceType = dot < 0 ? null : earlier.get(source.substring(0, dot));
+                if (sourceType == null || !sourceType.outputs().contains(source.substring(dot + 1))) {
+                    throw new IllegalArgumentException("Binding '" + name + "." + input + "' refers to unknown output '" +
+                            source + "'; outputs of earlier steps can be bound as step.output");
+                }
+                bindings.put(input, source);
+            });
+
+            pipeline.add(new Step(name, tool, type, bindings));
+            earlier.put(name, type);
+        }
+        return pipeline;
+    }
+
+    private Map<String, Object> parseParams(String json) {
+        JsonNode root = readJson(json, "params");
+        if (!root.isObject()) {
+            throw new IllegalArgumentException("params must be a JSON object keyed step.input");
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        root.fields().forEachRemaining(field -> {
+            JsonNode value = field.getValue();
+            if (!field.getKey().contains(".")) {
+                throw new IllegalArgumentException("Parameter '" + field.getKey() + "' must be qualified as step.input");
+            }
+            if (!value.isNull()) {
+                values.put(field.getKey(), value.isNumber() ? value.numberValue() : value.asText());
+            }
+        });
+        return values;
+    }
+
+    private JsonNode readJson(String json, String what) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(what + " is not valid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private boolean acceptsParam(List<Step> pipeline, String qualifiedName) {
+        for (Step step : pipeline) {
+            String prefix = step.name() + ".";
+            if (qualifiedName.startsWith(prefix)) {
+                String input = qualifiedName.substring(prefix.length());
+                return step.type().required().containsKey(input) || step.type().defaults().containsKey(input);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Inputs come from bindings first, then from collected params, then from defaults.
+     */
+    private Map<String, Object> resolveInputs(Step step, ToolSession session,
+                                              Map<String, Map<String, Object>> outputs) {
+        Map<String, Object> inputs = new HashMap<>(step.type().defaults());
+        Set<String> names = new HashSet<>(step.type().required().keySet());
+        names.addAll(step.type().defaults().keySet());
+        for (String input : names) {
+            String source = step.bindings().get(input);
+            if (source != null) {
+                int dot = source.indexOf('.');
+                inputs.put(input, outputs.get(source.substring(0, dot)).get(source.substring(dot + 1)));
+            } else {
+                Object value = session.getParam(step.name() + "." + input);
+                if (value != null) {
+                    inputs.put(input, value);
+                }
+            }
+        }
+        return inputs;
+    }
+
+    private Map<String, Object> buildProfile(Map<String, Object> inputs) {
+        String name = text(inputs.get("name"));
+        String email = text(inputs.get("email"));
+        String preferences = text(inputs.get("preferences"));
+        String violation = ProfileFields.firstViolation(name, email, inputs.get("age"), preferences);
+        if (violation != null) {
+            throw new IllegalArgumentException(violation);
+        }
+        return ProfileFields.toProfile(name, email, inputs.get("age"), preferences);
+    }
+
+    private static String text(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static Map<String, String> params(String... namesAndDescriptions) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndDescriptions.length; i += 2) {
+            params.put(namesAndDescriptions[i], namesAndDescriptions[i + 1]);
+        }
+        return params;
+    }
+
+    /**
+     * The work a pipeline step performs, from resolved inputs to named outputs.
+     */
+    @FunctionalInterface
+    private interface StepAction {
+        Map<String, Object> run(Map<String, Object> inputs) throws Exception;
+    }
+
+    private record StepType(Map<String, String> required, Map<String, Object> defaults,
+                            List<String> outputs, StepAction action) {
+    }
+
+    private record Step(String name, String tool, StepType type, Map<String, String> bindings) {
+    }
+
+    private record CompletedStep(Map<String, Object> inputs, Map<String, Object> output) {
+    }
+
+    /**
+     * Outputs of the steps that have run so far, kept as the session's tool state
+     * so that a retry after a failed step does not repeat the earlier ones.
+     */
+    private record PipelineProgress(String steps, Map<String, CompletedStep> completed) {
+        PipelineProgress(String steps) {
+            this(steps, new HashMap<>());
+        }
+    }
+}
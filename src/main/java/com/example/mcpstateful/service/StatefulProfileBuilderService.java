@@ -1,19 +1,15 @@
 package com.example.mcpstateful.service;
 
+import com.example.mcpstateful.response.ToolResult;
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.state.SessionClosedException;
 import com.example.mcpstateful.state.SessionManager;
+import com.example.mcpstateful.state.ToolResultCache;
 import com.example.mcpstateful.state.ToolSession;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 @Service
@@ -22,10 +18,27 @@ public class StatefulProfileBuilderService {
     @Autowired
     private SessionManager sessionManager;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Autowired
+    private ToolResultRenderer renderer;
+
+    @Autowired
+    private ToolResultCache resultCache;
 
-    @Tool(description = "Build a user profile by collecting information across multiple interactions. Can gather name, email, preferences, and other details progressively.")
+    @Tool(description = "Build a user profile by collecting information across multiple interactions. Can gather name, email, preferences, and other details progressively. " +
+          "An identical call within the result-cache TTL (5 minutes by default) returns the first result " +
+          "instead of creating another profile.")
     public String buildProfile(String name, String email, Integer age, String preferences, String sessionId) {
+        // Identical retries get the original result instead of running again, even while it is still running
+        String fingerprint = ToolResultCache.fingerprint("build_profile", name, email, age, preferences);
+        try {
+            return resultCache.getOrExecute(sessionId, fingerprint,
+                    () -> buildProfileTurn(name, email, age, preferences, sessionId, fingerprint));
+        } catch (SessionClosedException e) {
+            return renderer.render(ToolResult.sessionClosed("build_profile", sessionId));
+        }
+    }
+
+    private String buildProfileTurn(String name, String email, Integer age, String preferences, String sessionId, String fingerprint) {
         // Define required parameters
         Map<String, String> requiredParams = new java.util.LinkedHashMap<>();
         requiredParams.put("name", "User's full name");
@@ -38,27 +51,25 @@ public class StatefulProfileBuilderService {
         String currentSessionId;
         
         if (sessionId != null && !sessionId.trim().isEmpty()) {
-            session = sessionManager.getSession(sessionId);
+            // Reuse the session, or start one under the caller's ID if it is unknown
+            session = sessionManager.getOrCreateSession(sessionId, "build_profile", requiredParams);
             currentSessionId = sessionId;
-            if (session == null) {
-                session = sessionManager.createSession(sessionId, "build_profile", requiredParams);
-            }
         } else {
             currentSessionId = sessionManager.generateSessionId();
             session = sessionManager.createSession(currentSessionId, "build_profile", requiredParams);
         }
 
         // Collect provided parameters
-        if (name != null && !name.trim().isEmpty()) {
+        if (ProfileFields.hasText(name)) {
             session.addParam("name", name);
         }
-        if (email != null && !email.trim().isEmpty()) {
+        if (ProfileFields.hasText(email)) {
             session.addParam("email", email);
         }
         if (age != null) {
             session.addParam("age", age);
         }
-        if (preferences != null && !preferences.trim().isEmpty()) {
+        if (ProfileFields.hasText(preferences)) {
             session.addParam("preferences", preferences);
         }
 
@@ -66,53 +77,51 @@ public class StatefulProfileBuilderService {
         if (!session.isComplete()) {
             String missingParam = session.getNextMissingParam();
             String paramDescription = requiredParams.get(missingParam);
-            
-            return String.format(
-                "I need more information to build the profile.\n\n" +
-                "Missing parameter: **%s**\n" +
-                "Description: %s\n\n" +
-                "Session ID: `%s`\n" +
-                "Please call the tool again with this parameter.",
-                missingParam,
-                paramDescription,
-                currentSessionId
-            );
+
+            return renderer.render(ToolResult.needsInput(
+                    "build_profile", currentSessionId, missingParam, paramDescription, "build the profile"));
+        }
+
+        // Same rules as the importer and the pipeline's build_profile step
+        String violation = ProfileFields.firstViolation(
+                (String) session.getParam("name"),
+                (String) session.getParam("email"),
+                session.getParam("age"),
+                (String) session.getParam("preferences"));
+        if (violation != null) {
+            // Keep session active on error for retry
+            return renderer.render(ToolResult.error("build_profile", currentSessionId, violation,
+                    "Error creating profile: ", "Please call the tool again with corrected parameters."));
+        }
+
+        // Of several concurrent final turns, only the one that claims the session builds the profile
+        if (!sessionManager.claimForCompletion(currentSessionId, session)) {
+            return renderer.render(ToolResult.alreadyRunning("build_profile", currentSessionId));
         }
 
         // Build the profile
         try {
-            Map<String, Object> profile = new HashMap<>();
-            profile.put("name", session.getCollectedParams().get("name"));
-            profile.put("email", session.getCollectedParams().get("email"));
-            profile.put("age", session.getCollectedParams().get("age"));
-            
-            // Parse preferences
-            String preferencesStr = (String) session.getCollectedParams().get("preferences");
-            List<String> preferencesList = Arrays.stream(preferencesStr.split(","))
-                    .map(String::trim)
-                    .toList();
-            profile.put("preferences", preferencesList);
-            profile.put("created_at", LocalDateTime.now().toString());
-
-            String profileJson = objectMapper.writerWithDefaultPrettyPrinter()
-                    .writeValueAsString(profile);
-
-            String result = "Profile created successfully!\n\n" + profileJson;
+            Map<String, Object> profile = ProfileFields.toProfile(
+                    (String) session.getParam("name"),
+                    (String) session.getParam("email"),
+                    session.getParam("age"),
+                    (String) session.getParam("preferences"));
 
             // Clean up session
-            sessionManager.deleteSession(currentSessionId);
+            sessionManager.completeSession(currentSessionId);
 
-            return result;
+            String response = renderer.render(ToolResult.success("build_profile", profile,
+                    () -> "Profile created successfully!\n\n" + renderer.prettyJson(profile)));
+            return resultCache.put(sessionId, fingerprint, response);
 
+        } catch (SessionClosedException e) {
+            throw e; // Reported by buildProfile()
         } catch (Exception e) {
             // Keep session active on error for retry
-            return String.format(
-                "Error creating profile: %s\n\n" +
-                "Session ID: `%s`\n" +
-                "Please call the tool again with corrected parameters.",
-                e.getMessage(),
-                currentSessionId
-            );
+            return renderer.render(ToolResult.error("build_profile", currentSessionId, e.getMessage(),
+                    "Error creating profile: ", "Please call the tool again with corrected parameters."));
+        } finally {
+            sessionManager.releaseClaim(session);
         }
     }
 }
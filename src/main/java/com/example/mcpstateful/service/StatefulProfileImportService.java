@@ -0,0 +1,422 @@
+package com.example.mcpstateful.service;
+
+import com.example.mcpstateful.response.ToolResult;
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.state.SessionClosedException;
+import com.example.mcpstateful.state.SessionManager;
+import com.example.mcpstateful.state.ToolResultCache;
+import com.example.mcpstateful.state.ToolSession;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Stateful bulk profile importer.
+ * Streams NDJSON or CSV records from a local file, validates them in parallel
+ * with the same field rules as build_profile, and writes valid profiles in batches.
+ * At most two batches are held in memory at a time, whatever the size of the input.
+ */
+@Service
+public class StatefulProfileImportService {
+
+    private static final int MAX_REPORTED_REJECTS = 5;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private ToolResultRenderer renderer;
+
+    @Autowired
+    private ToolResultCache resultCache;
+
+    @Value("${stateful-tools.bulk-import.batch-size:1000}")
+    private int batchSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter recordWriter = objectMapper.writer();
+
+    @Tool(description = "Import many user profiles at once from a local NDJSON or CSV file. " +
+          "Valid profiles are written as NDJSON to output_path and rejected records are reported. " +
+          "Can collect source_path, output_path and format parameters across multiple interactions.")
+    public String importProfiles(String sourcePath, String outputPath, String format, String sessionId) {
+        // Identical retries get the original result instead of running again, even while it is still running
+        String fingerprint = ToolResultCache.fingerprint("import_profiles", sourcePath, outputPath, format);
+        try {
+            return resultCache.getOrExecute(sessionId, fingerprint,
+                    () -> importProfilesTurn(sourcePath, outputPath, format, sessionId, fingerprint));
+        } catch (SessionClosedException e) {
+            return renderer.render(ToolResult.sessionClosed("import_profiles", sessionId));
+        }
+    }
+
+    private String importProfilesTurn(String sourcePath, String outputPath, String format, String sessionId, String fingerprint) {
+
+        // Define required parameters
+        Map<String, String> requiredParams = new java.util.LinkedHashMap<>();
+        requiredParams.put("source_path", "Path of the NDJSON or CSV file to import (CSV needs a header row)");
+        requiredParams.put("output_path", "Path where the imported profiles should be written as NDJSON");
+
+        // Get or create session
+        ToolSession session;
+        String currentSessionId;
+
+        if (sessionId != null && !sessionId.trim().isEmpty()) {
+            // Reuse the session, or start one under the caller's ID if it is unknown
+            session = sessionManager.getOrCreateSession(sessionId, "import_profiles", requiredParams);
+            currentSessionId = sessionId;
+        } else {
+            currentSessionId = sessionManager.generateSessionId();
+            session = sessionManager.createSession(currentSessionId, "import_profiles", requiredParams);
+        }
+
+        // Collect provided parameters
+        if (ProfileFields.hasText(sourcePath)) {
+            session.addParam("source_path", sourcePath);
+        }
+        if (ProfileFields.hasText(outputPath)) {
+            session.addParam("output_path", outputPath);
+        }
+        if (ProfileFields.hasText(format)) {
+            session.addParam("format", format.trim().toLowerCase());
+        }
+
+        // Check if we have all required parameters
+        if (!session.isComplete()) {
+            String missingParam = session.getNextMissingParam();
+            String paramDescription = requiredParams.get(missingParam);
+
+            return renderer.render(ToolResult.needsInput(
+                    "import_profiles", currentSessionId, missingParam, paramDescription, "import the profiles"));
+        }
+
+        // Of several concurrent final turns, only the one that claims the session imports
+        if (!sessionManager.claimForCompletion(currentSessionId, session)) {
+            return renderer.render(ToolResult.alreadyRunning("import_profiles", currentSessionId));
+        }
+
+        // Run the import
+        try {
+            Path source = Paths.get((String) session.getParam("source_path"));
+            Path output = Paths.get((String) session.getParam("output_path"));
+            String recordFormat = resolveFormat((String) session.getParam("format"), source);
+
+            ImportSummary summary = runImport(source, output, recordFormat);
+
+            // Clean up session after successful completion
+            sessionManager.completeSession(currentSessionId);
+
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("source", source.toString());
+            payload.put("read", summary.read());
+            payload.put("output", output.toString());
+            payload.put("written", summary.written());
+            payload.put("rejectsPath", summary.rejectsPath().toString());
+            payload.put("rejected", summary.rejected());
+            payload.put("sampleRejects", summary.sampleRejects());
+
+            String response = renderer.render(ToolResult.success("import_profiles", payload, () -> {
+                StringBuilder result = new StringBuilder()
+                        .append("✅ Imported profiles from: ").append(source).append('\n')
+                        .append("Records read: ").append(summary.read()).append('\n')
+                        .append("Profiles written: ").append(summary.written()).append(" (").append(output).append(")\n")
+                        .append("Records rejected: ").append(summary.rejected()).append(" (").append(summary.rejectsPath()).append(')');
+                if (!summary.sampleRejects().isEmpty()) {
+                    result.append("\n\nFirst rejected records:");
+                    summary.sampleRejects().forEach(reject -> result.append("\n- ").append(reject));
+                }
+                return result.toString();
+            }));
+            return resultCache.put(sessionId, fingerprint, response);
+
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            // Keep session active on error for retry
+            return renderer.render(ToolResult.error("import_profiles", currentSessionId, e.getMessage(),
+                    "❌ Error importing profiles: ", "Please call the tool again with corrected parameters."));
+        } finally {
+            sessionManager.releaseClaim(session);
+        }
+    }
+
+    /**
+     * Use the explicit format if given, otherwise infer it from the file extension.
+     */
+    private String resolveFormat(String format, Path source) {
+        String resolved = format;
+        if (resolved == null) {
+            String fileName = source.getFileName().toString().toLowerCase();
+            resolved = fileName.endsWith(".csv") ? "csv" : "ndjson";
+        }
+        if (!resolved.equals("csv") && !resolved.equals("ndjson")) {
+            throw new IllegalArgumentException("Unsupported format '" + format + "' (expected 'ndjson' or 'csv')");
+        }
+        return resolved;
+    }
+
+    /**
+     * Stream the source file batch by batch. While one batch is validated on the
+     * common fork-join pool, the next one is read; results are written in input order.
+     */
+    private ImportSummary runImport(Path source, Path output, String format) throws IOException {
+        Path rejectsPath = output.resolveSibling(output.getFileName() + ".rejects.ndjson");
+        Path parentDir = output.toAbsolutePath().getParent();
+        if (parentDir != null && !Files.exists(parentDir)) {
+            Files.createDirectories(parentDir);
+        }
+
+        ImportSummary summary = new ImportSummary(rejectsPath);
+        int effectiveBatchSize = Math.max(1, batchSize);
+
+        try (BufferedReader reader = Files.newBufferedReader(source);
+             BufferedWriter profilesOut = Files.newBufferedWriter(output);
+             BufferedWriter rejectsOut = Files.newBufferedWriter(rejectsPath)) {
+
+            long lineNumber = 0;
+            List<String> header = null;
+            if (format.equals("csv")) {
+                String headerLine = reader.readLine();
+                lineNumber++;
+                if (headerLine == null) {
+                    throw new IllegalArgumentException("CSV file is empty: " + source);
+                }
+                header = parseCsvLine(headerLine).stream().map(column -> column.trim().toLowerCase()).toList();
+            }
+
+            CompletableFuture<List<ValidatedRecord>> pending = null;
+            List<SourceLine> batch = new ArrayList<>(effectiveBatchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                batch.add(new SourceLine(lineNumber, line));
+                if (batch.size() == effectiveBatchSize) {
+                    pending = submitAfter(pending, batch, header, profilesOut, rejectsOut, summary);
+                    batch = new ArrayList<>(effectiveBatchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending = submitAfter(pending, batch, header, profilesOut, rejectsOut, summary);
+            }
+            if (pending != null) {
+                writeBatch(join(pending), profilesOut, rejectsOut, summary);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Finish writing the previous batch, then start validating the given one.
+     */
+    private CompletableFuture<List<ValidatedRecord>> submitAfter(
+            CompletableFuture<List<ValidatedRecord>> previous, List<SourceLine> batch, List<String> header,
+            BufferedWriter profilesOut, BufferedWriter rejectsOut, ImportSummary summary) throws IOException {
+        CompletableFuture<List<ValidatedRecord>> next =
+                CompletableFuture.supplyAsync(() -> batch.parallelStream().map(sourceLine -> validate(sourceLine, header)).toList());
+        if (previous != null) {
+            writeBatch(join(previous), profilesOut, rejectsOut, summary);
+        }
+        return next;
+    }
+
+    private List<ValidatedRecord> join(CompletableFuture<List<ValidatedRecord>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void writeBatch(List<ValidatedRecord> records, BufferedWriter profilesOut, BufferedWriter rejectsOut,
+                            ImportSummary summary) throws IOException {
+        for (ValidatedRecord record : records) {
+            summary.read++;
+            if (record.profileJson() != null) {
+                profilesOut.write(record.profileJson());
+                profilesOut.newLine();
+                summary.written++;
+            } else {
+                Map<String, Object> reject = new HashMap<>();
+                reject.put("line", record.lineNumber());
+                reject.put("reason", record.rejectReason());
+                rejectsOut.write(recordWriter.writeValueAsString(reject));
+                rejectsOut.newLine();
+                summary.rejected++;
+                if (summary.sampleRejects.size() < MAX_REPORTED_REJECTS) {
+                    summary.sampleRejects.add("line " + record.lineNumber() + ": " + record.rejectReason());
+                }
+            }
+        }
+        profilesOut.flush();
+        rejectsOut.flush();
+    }
+
+    /**
+     * Parse one source line and apply the profile field rules. Runs on worker threads.
+     */
+    private ValidatedRecord validate(SourceLine sourceLine, List<String> header) {
+        try {
+            Map<String, Object> fields = header == null
+                    ? parseNdjsonRecord(sourceLine.text())
+                    : parseCsvRecord(sourceLine.text(), header);
+
+            String name = asText(fields.get("name"));
+            String email = asText(fields.get("email"));
+            Object age = fields.get("age");
+            String preferences = asText(fields.get("preferences"));
+
+            String violation = ProfileFields.firstViolation(name, email, age, preferences);
+            if (violation != null) {
+                return ValidatedRecord.rejected(sourceLine.number(), violation);
+            }
+            Map<String, Object> profile = ProfileFields.toProfile(name, email, age, preferences);
+            return ValidatedRecord.accepted(sourceLine.number(), recordWriter.writeValueAsString(profile));
+        } catch (IOException | IllegalArgumentException e) {
+            return ValidatedRecord.rejected(sourceLine.number(), "Malformed record: " + e.getMessage());
+        }
+    }
+
+    private Map<String, Object> parseNdjsonRecord(String line) throws IOException {
+        JsonNode node = objectMapper.readTree(line);
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("expected a JSON object");
+        }
+        Map<String, Object> fields = new HashMap<>();
+        node.fields().forEachRemaining(field -> {
+            JsonNode value = field.getValue();
+            if (value.isNumber()) {
+                fields.put(field.getKey(), value.numberValue());
+            } else if (value.isArray()) {
+                // Accept preference lists given as JSON arrays as well as comma-separated text
+                List<String> items = new ArrayList<>();
+                value.forEach(item -> items.add(item.asText()));
+                fields.put(field.getKey(), String.join(",", items));
+            } else if (!value.isNull()) {
+                fields.put(field.getKey(), value.asText());
+            }
+        });
+        return fields;
+    }
+
+    private Map<String, Object> parseCsvRecord(String line, List<String> header) {
+        List<String> values = parseCsvLine(line);
+        if (values.size() > header.size()) {
+            throw new IllegalArgumentException("expected " + header.size() + " columns but found " + values.size());
+        }
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            fields.put(header.get(i), values.get(i));
+        }
+        return fields;
+    }
+
+    /**
+     * Split a single CSV line, honouring double-quoted fields and doubled quotes.
+     * Quoted fields spanning several lines are not supported.
+     */
+    private List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        values.add(current.toString());
+        return values;
+    }
+
+    private String asText(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private record SourceLine(long number, String text) {
+    }
+
+    private record ValidatedRecord(long lineNumber, String profileJson, String rejectReason) {
+        static ValidatedRecord accepted(long lineNumber, String profileJson) {
+            return new ValidatedRecord(lineNumber, profileJson, null);
+        }
+
+        static ValidatedRecord rejected(long lineNumber, String reason) {
+            return new ValidatedRecord(lineNumber, null, reason);
+        }
+    }
+
+    /**
+     * Running totals for one import; only touched by the thread writing batches.
+     */
+    private static final class ImportSummary {
+        private final Path rejectsPath;
+        private final List<String> sampleRejects = new ArrayList<>();
+        private long read;
+        private long written;
+        private long rejected;
+
+        ImportSummary(Path rejectsPath) {
+            this.rejectsPath = rejectsPath;
+        }
+
+        Path rejectsPath() {
+            return rejectsPath;
+        }
+
+        List<String> sampleRejects() {
+            return sampleRejects;
+        }
+
+        long read() {
+            return read;
+        }
+
+        long written() {
+            return written;
+        }
+
+        long rejected() {
+            return rejected;
+        }
+    }
+}
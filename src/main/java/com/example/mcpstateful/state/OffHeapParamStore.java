@@ -0,0 +1,175 @@
+package com.example.mcpstateful.state;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Keeps large session parameter values out of the Java heap.
+ *
+ * String values of at least {@code threshold-bytes} (UTF-8) are compressed
+ * with Deflate (unless that does not shrink them) and written into fixed-size
+ * direct buffer blocks. The session then holds only a small
+ * {@link OffHeapValue} handle, which is decoded when a tool reads it. Blocks
+ * come from a pool capped at {@code max-bytes} and go back to it as soon as
+ * the value is released, so memory is reclaimed when a session closes rather
+ * than whenever the garbage collector gets to it. When the pool is exhausted,
+ * values simply stay on the heap. Free blocks are kept for reuse rather than
+ * freed, so once a peak has filled the pool it holds {@code max-bytes} of
+ * direct memory for the life of the process.
+ */
+@Component
+public class OffHeapParamStore {
+
+    private final int thresholdBytes;
+    private final boolean compress;
+    private final int blockSize;
+    private final long maxBytes;
+
+    private final ConcurrentLinkedDeque<ByteBuffer> freeBlocks = new ConcurrentLinkedDeque<>();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    public OffHeapParamStore(
+            @Value("${stateful-tools.sessions.off-heap.threshold-bytes:16384}") int thresholdBytes,
+            @Value("${stateful-tools.sessions.off-heap.compression:deflate}") String compression,
+            @Value("${stateful-tools.sessions.off-heap.block-size:16384}") int blockSize,
+            @Value("${stateful-tools.sessions.off-heap.max-bytes:268435456}") long maxBytes) {
+        if (!compression.equalsIgnoreCase("deflate") && !compression.equalsIgnoreCase("none")) {
+            throw new IllegalArgumentException(
+                    "Unsupported off-heap compression '" + compression + "' (expected deflate or none)");
+        }
+        this.thresholdBytes = thresholdBytes;
+        this.compress = compression.equalsIgnoreCase("deflate");
+        this.blockSize = blockSize;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Move a value off-heap if it is a large enough string and the pool has
+     * room; otherwise return it unchanged.
+     */
+    Object store(Object value) {
+        // A UTF-8 char takes at most 3 bytes, so shorter strings cannot reach the threshold
+        if (thresholdBytes <= 0 || !(value instanceof String text) || (long) text.length() * 3 < thresholdBytes) {
+            return value;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < thresholdBytes) {
+            return value;
+        }
+
+        List<ByteBuffer> blocks = compress ? writeCompressed(bytes) : null;
+        boolean compressed = blocks != null;
+        if (blocks == null) {
+            blocks = writeRaw(bytes);
+        }
+        if (blocks == null) {
+            return value;
+        }
+        int storedBytes = 0;
+        for (ByteBuffer block : blocks) {
+            block.flip();
+            storedBytes += block.remaining();
+        }
+        usedBytes.addAndGet((long) blocks.size() * blockSize);
+        return new OffHeapValue(this, blocks, bytes.length, storedBytes, compressed);
+    }
+
+    /**
+     * Bytes of pool blocks currently holding values.
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Bytes of direct memory allocated for the pool so far, whether in use or free.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    void release(List<ByteBuffer> blocks) {
+        usedBytes.addAndGet(-(long) blocks.size() * blockSize);
+        for (ByteBuffer block : blocks) {
+            block.clear();
+            freeBlocks.push(block);
+        }
+    }
+
+    /**
+     * Deflate straight into pool blocks. Returns null if compression does not
+     * save space or the pool runs out; any blocks taken are returned.
+     */
+    private List<ByteBuffer> writeCompressed(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        List<ByteBuffer> blocks = new ArrayList<>();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteBuffer block = null;
+            while (!deflater.finished()) {
+                if (block == null || !block.hasRemaining()) {
+                    block = acquire();
+                    if (block == null || deflater.getBytesWritten() >= bytes.length) {
+                        giveBack(blocks, block);
+                        return null;
+                    }
+                    blocks.add(block);
+                }
+                deflater.deflate(block);
+            }
+            if (deflater.getBytesWritten() >= bytes.length) {
+                giveBack(blocks, null);
+                return null;
+            }
+            return blocks;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private List<ByteBuffer> writeRaw(byte[] bytes) {
+        List<ByteBuffer> blocks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += blockSize) {
+            ByteBuffer block = acquire();
+            if (block == null) {
+                giveBack(blocks, null);
+                return null;
+            }
+            block.put(bytes, offset, Math.min(blockSize, bytes.length - offset));
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer block = freeBlocks.poll();
+        if (block != null) {
+            return block;
+        }
+        if (allocatedBytes.addAndGet(blockSize) > maxBytes) {
+            allocatedBytes.addAndGet(-blockSize);
+            return null;
+        }
+        return ByteBuffer.allocateDirect(blockSize);
+    }
+
+    private void giveBack(List<ByteBuffer> blocks, ByteBuffer extra) {
+        if (extra != null) {
+            blocks.add(extra);
+        }
+        for (ByteBuffer block : blocks) {
+            block.clear();
+            freeBlocks.push(block);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.mcpstateful.state;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Handle to a string parameter value stored in {@link OffHeapParamStore}
+ * blocks. The string is rebuilt on every {@link #decode()}, so it only lives
+ * on the heap while a tool is using it.
+ */
+final class OffHeapValue {
+
+    private final OffHeapParamStore store;
+    private final List<ByteBuffer> blocks;
+    private final int originalBytes;
+    private final int storedBytes;
+    private final boolean compressed;
+    private boolean released;
+
+    OffHeapValue(OffHeapParamStore store, List<ByteBuffer> blocks, int originalBytes, int storedBytes,
+                 boolean compressed) {
+        this.store = store;
+        this.blocks = blocks;
+        this.originalBytes = originalBytes;
+        this.storedBytes = storedBytes;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Rebuild the string, or return null if the value has been released.
+     */
+    synchronized String decode() {
+        if (released) {
+            return null;
+        }
+        byte[] bytes = new byte[originalBytes];
+        if (compressed) {
+            inflate(bytes);
+        } else {
+            int offset = 0;
+            for (ByteBuffer block : blocks) {
+                ByteBuffer view = block.duplicate();
+                int length = view.remaining();
+                view.get(bytes, offset, length);
+                offset += length;
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the blocks to the pool. Safe to call more than once.
+     */
+    synchronized void release() {
+        if (!released) {
+            released = true;
+            store.release(blocks);
+        }
+    }
+
+    int storedBytes() {
+        return storedBytes;
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    private void inflate(byte[] bytes) {
+        Inflater inflater = new Inflater(true);
+        try {
+            int offset = 0;
+            for (ByteBuffer block : blocks) {
+                inflater.setInput(block.duplicate());
+                while (!inflater.needsInput() && offset < bytes.length) {
+                    offset += inflater.inflate(bytes, offset, bytes.length - offset);
+                }
+            }
+            if (offset != bytes.length) {
+                throw new IllegalStateException("Off-heap parameter value is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Off-heap parameter value is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapValue[" + originalBytes + " bytes, " + storedBytes + " stored"
+                + (compressed ? ", deflated" : "") + (released ? ", released" : "") + "]";
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.mcpstateful.state;
+
+/**
+ * Thrown when a call reads a parameter of a session that another call has
+ * meanwhile completed, deleted or expired, so its off-heap values are gone.
+ * Tools report it as a "session closed" result for the client.
+ */
+public class SessionClosedException extends RuntimeException {
+
+    public SessionClosedException() {
+        // A lost race with a concurrent call, not a bug; skip the stack trace
+        super("Session was closed by another call while this call was using it", null, false, false);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.mcpstateful.state;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.List;
+
+/**
+ * A change in a session's lifecycle, published by {@link SessionManager}.
+ *
+ * @param sequence  increasing number, so subscribers can see which events they missed
+ * @param parameter the parameter that was added, for {@link Type#PARAM_ADDED} only
+ * @param missing   parameters still missing after the change
+ * @param timestamp ISO-8601 instant of the change
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record SessionEvent(
+        long sequence,
+        Type type,
+        String sessionId,
+        String tool,
+        String parameter,
+        List<String> missing,
+        String timestamp
+) {
+
+    public enum Type {
+        /**
+         * A new session was opened.
+         */
+        CREATED,
+
+        /**
+         * A parameter was collected.
+         */
+        PARAM_ADDED,
+
+        /**
+         * Every parameter has been collected and a call is about to run the tool.
+         * Published again if the tool failed and a retry runs it.
+         */
+        READY,
+
+        /**
+         * The tool ran successfully and the session was closed.
+         */
+        COMPLETED,
+
+        /**
+         * The session was closed after being idle for too long.
+         */
+        EXPIRED;
+
+        @JsonValue
+        public String wireName() {
+            return name().toLowerCase();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.mcpstateful.state;
+
+/**
+ * Thrown when a new session would exceed {@code stateful-tools.sessions.max-sessions}.
+ * Admission control turns it into a "rejected" result for the client.
+ */
+public class SessionLimitExceededException extends RuntimeException {
+
+    public SessionLimitExceededException(int maxSessions) {
+        // Refusals are part of normal overload handling; skip the stack trace to keep them cheap
+        super("Session store is full (" + maxSessions + " sessions); not starting new sessions", null, false, false);
+    }
+}
@@ -1,28 +1,88 @@
 package com.example.mcpstateful.state;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.UUID;
 
 /**
  * Manages conversation sessions across tool calls.
- * 
+ *
  * This component maintains state for multi-turn conversations,
  * allowing tools to collect parameters progressively across
  * multiple interactions.
+ *
+ * Lifecycle changes are published as {@link SessionEvent}s on a hot stream
+ * (see {@link #events()}), so clients can follow sessions without polling
+ * {@code list_sessions}.
  */
 @Component
 public class SessionManager {
-    
+
     private final Map<String, ToolSession> sessions = new ConcurrentHashMap<>();
 
+    // Best-effort multicast: a subscriber without demand misses the event instead of holding up the publisher
+    private final Sinks.Many<SessionEvent> events = Sinks.many().multicast().directBestEffort();
+    private long eventSequence;
+
+    @Autowired(required = false)
+    private OffHeapParamStore offHeapStore;
+
+    @Value("${stateful-tools.sessions.idle-timeout-minutes:30}")
+    private long idleTimeoutMinutes;
+
+    @Value("${stateful-tools.sessions.max-sessions:10000}")
+    private int maxSessions;
+
+    @Value("${stateful-tools.session-events.buffer-size:256}")
+    private int eventBufferSize = 256;
+
     /**
      * Create a new tool session with required parameters.
+     *
+     * @throws SessionLimitExceededException if the store already holds {@code max-sessions} sessions
      */
     public ToolSession createSession(String sessionId, String toolName, Map<String, String> requiredParams) {
-        ToolSession session = new ToolSession(toolName, requiredParams);
-        sessions.put(sessionId, session);
+        if (!sessions.containsKey(sessionId)) {
+            checkCapacity();
+        }
+        ToolSession session = newSession(sessionId, toolName, requiredParams);
+        ToolSession replaced = sessions.put(sessionId, session);
+        if (replaced != null) {
+            replaced.release();
+        }
+        publish(SessionEvent.Type.CREATED, sessionId, session, null);
+        return session;
+    }
+
+    /**
+     * Get the session with the given ID, creating it if it does not exist.
+     * This is atomic, so concurrent first turns for one ID share a session
+     * instead of overwriting each other's parameters.
+     *
+     * @throws SessionLimitExceededException if a session would be created and the store is full
+     */
+    public ToolSession getOrCreateSession(String sessionId, String toolName, Map<String, String> requiredParams) {
+        ToolSession[] created = new ToolSession[1];
+        ToolSession session = sessions.computeIfAbsent(sessionId, id -> {
+            checkCapacity();
+            return created[0] = newSession(id, toolName, requiredParams);
+        });
+        if (created[0] != null) {
+            publish(SessionEvent.Type.CREATED, sessionId, session, null);
+        } else {
+            session.touch();
+        }
         return session;
     }
 
@@ -30,7 +90,11 @@ public class SessionManager {
      * Get an existing session by ID.
      */
     public ToolSession getSession(String sessionId) {
-        return sessions.get(sessionId);
+        ToolSession session = sessions.get(sessionId);
+        if (session != null) {
+            session.touch();
+        }
+        return session;
     }
 
     /**
@@ -44,11 +108,106 @@ public class SessionManager {
         return session;
     }
 
+    /**
+     * Claim a complete session so that only the calling turn runs its tool.
+     *
+     * Concurrent final turns can all see a session complete; the first to
+     * claim it runs the tool and the others get false and must not. The claim
+     * holds until {@link #completeSession} closes the session or
+     * {@link #releaseClaim} keeps it for a retry. Claimed sessions do not expire.
+     *
+     * A successful claim publishes {@link SessionEvent.Type#READY}: the tool is
+     * about to run. Merely collecting the last missing parameter does not, since
+     * a tool may still declare more parameters before it runs.
+     *
+     * @return false if the session is already claimed or is no longer the one stored under the ID
+     */
+    public boolean claimForCompletion(String sessionId, ToolSession session) {
+        if (sessions.get(sessionId) != session || !session.tryClaim()) {
+            return false;
+        }
+        publish(SessionEvent.Type.READY, sessionId, session, null);
+        return true;
+    }
+
+    /**
+     * Give up a claim without closing the session, for instance because the
+     * tool failed and the call may be retried.
+     */
+    public void releaseClaim(ToolSession session) {
+        session.unclaim();
+    }
+
+    /**
+     * Close a session whose tool ran successfully.
+     */
+    public void completeSession(String sessionId) {
+        ToolSession session = sessions.remove(sessionId);
+        if (session != null) {
+            session.release();
+            publish(SessionEvent.Type.COMPLETED, sessionId, session, null);
+        }
+    }
+
     /**
      * Delete a session.
      */
     public void deleteSession(String sessionId) {
-        sessions.remove(sessionId);
+        ToolSession session = sessions.remove(sessionId);
+        if (session != null) {
+            session.release();
+        }
+    }
+
+    /**
+     * Expire sessions that have been idle longer than
+     * {@code stateful-tools.sessions.idle-timeout-minutes} (0 disables expiry).
+     */
+    @Scheduled(fixedDelayString = "${stateful-tools.sessions.expiry-check-interval-ms:60000}")
+    public void expireIdleSessions() {
+        if (idleTimeoutMinutes > 0) {
+            expireSessionsIdleLongerThan(Duration.ofMinutes(idleTimeoutMinutes));
+        }
+    }
+
+    /**
+     * Expire every session idle for longer than the given time and return how many were expired.
+     */
+    public int expireSessionsIdleLongerThan(Duration idleTimeout) {
+        long timeoutNanos = idleTimeout.toNanos();
+        int expired = 0;
+        for (Map.Entry<String, ToolSession> entry : sessions.entrySet()) {
+            ToolSession session = entry.getValue();
+            // Remove only this instance, in case the ID was reused meanwhile
+            if (session.idleNanos() > timeoutNanos && !session.isClaimed()
+                    && sessions.remove(entry.getKey(), session)) {
+                session.release();
+                publish(SessionEvent.Type.EXPIRED, entry.getKey(), session, null);
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Hot stream of session events from the moment of subscription.
+     *
+     * Publishing never waits for demand: each subscriber gets its own buffer of
+     * {@code session-events.buffer-size} events, and when it falls further
+     * behind its oldest events are dropped. Events are delivered on the
+     * publishing thread, outside any session lock, so a subscriber that does
+     * more than record an event should hand it off to its own thread.
+     */
+    public Flux<SessionEvent> events() {
+        return events.asFlux()
+                .onBackpressureBuffer(eventBufferSize, event -> { }, BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    /**
+     * Number of current subscribers to {@link #events()}.
+     */
+    public int getEventSubscriberCount() {
+        return events.currentSubscriberCount();
     }
 
     /**
@@ -58,6 +217,20 @@ public class SessionManager {
         return Map.copyOf(sessions);
     }
 
+    /**
+     * Number of active sessions.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Most sessions the store holds at once; 0 means no limit.
+     */
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
     /**
      * Generate a unique session ID.
      */
@@ -71,4 +244,30 @@ public class SessionManager {
     public boolean sessionExists(String sessionId) {
         return sessions.containsKey(sessionId);
     }
-}
\ No newline at end of file
+
+    private void checkCapacity() {
+        // Best effort: concurrent first turns can overshoot by at most one session each
+        if (maxSessions > 0 && sessions.size() >= maxSessions) {
+            throw new SessionLimitExceededException(maxSessions);
+        }
+    }
+
+    private ToolSession newSession(String sessionId, String toolName, Map<String, String> requiredParams) {
+        ToolSession session = new ToolSession(toolName, requiredParams);
+        session.setValueStore(offHeapStore);
+        session.setParamListener((changed, name) -> publish(SessionEvent.Type.PARAM_ADDED, sessionId, changed, name));
+        return session;
+    }
+
+    private void publish(SessionEvent.Type type, String sessionId, ToolSession session, String parameter) {
+        if (events.currentSubscriberCount() == 0) {
+            return;
+        }
+        List<String> missing = List.copyOf(session.getMissingParams());
+        // The sink must not be called concurrently; emission only hands the event to subscriber buffers
+        synchronized (events) {
+            events.tryEmitNext(new SessionEvent(++eventSequence, type, sessionId, session.getToolName(),
+                    parameter, missing, Instant.now().toString()));
+        }
+    }
+}
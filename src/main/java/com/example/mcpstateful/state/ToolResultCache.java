@@ -0,0 +1,178 @@
+package com.example.mcpstateful.state;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of final tool results, keyed by session ID plus a
+ * fingerprint of the call arguments. Calls that name no session, such as a
+ * single-call {@code create_file}, are keyed on the fingerprint alone, so an
+ * identical call within the TTL gets the first call's result.
+ *
+ * Clients often retry a tool call after a timeout. Once the final turn has
+ * run, its session is gone, so without this cache a retry would repeat the
+ * side effect (writing a file, creating a profile) or start a new conversation.
+ * The cache is bounded both by entry count and by time-to-live.
+ *
+ * A retry can also arrive while the original call is still running, typically
+ * after a client-side timeout. {@link #getOrExecute} registers each call as in
+ * flight before it runs, so such a retry waits for the original and gets its
+ * result instead of executing the tool a second time.
+ */
+@Component
+public class ToolResultCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    public ToolResultCache(
+            @Value("${stateful-tools.result-cache.max-entries:1000}") int maxEntries,
+            @Value("${stateful-tools.result-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+    }
+
+    /**
+     * Run a tool call unless an identical call in the same session has already
+     * finished or is still running; in those cases return that call's result.
+     * The call itself decides, through {@link #put}, whether its result is
+     * kept once it has finished.
+     */
+    public String getOrExecute(String sessionId, String fingerprint, Supplier<String> call) {
+        String cached = get(sessionId, fingerprint);
+        if (cached != null) {
+            return cached;
+        }
+
+        String key = key(sessionId, fingerprint);
+        CompletableFuture<String> running = new CompletableFuture<>();
+        CompletableFuture<String> original = inFlight.putIfAbsent(key, running);
+        if (original != null) {
+            return join(original);
+        }
+        try {
+            // The original may have finished between the lookup above and registering this call;
+            // it caches its result before leaving the in-flight map, so checking again is enough
+            String result = get(sessionId, fingerprint);
+            if (result == null) {
+                result = call.get();
+            }
+            running.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            running.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, running);
+        }
+    }
+
+    /**
+     * Return the cached result of an identical earlier call in this session, or null.
+     */
+    public String get(String sessionId, String fingerprint) {
+        String key = key(sessionId, fingerprint);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() - System.nanoTime() <= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.result();
+        }
+    }
+
+    /**
+     * Remember the final result of a call and return it unchanged.
+     */
+    public String put(String sessionId, String fingerprint, String result) {
+        if (maxEntries <= 0) {
+            return result;
+        }
+        String key = key(sessionId, fingerprint);
+        long now = System.nanoTime();
+        synchronized (entries) {
+            // Re-insert so a refreshed entry moves to the tail along with its new expiry
+            entries.remove(key);
+            entries.put(key, new Entry(result, now + ttlNanos));
+            // Entries are kept in insertion order and share one TTL, so expired ones sit at the head
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                if (entries.size() > maxEntries || eldest.expiresAt() - now <= 0) {
+                    iterator.remove();
+                } else {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of results currently held, including ones that have expired but not yet been evicted.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Compute a compact fingerprint of a tool call from the tool name and its arguments.
+     */
+    public static String fingerprint(String toolName, Object... arguments) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(toolName.getBytes(StandardCharsets.UTF_8));
+            for (Object argument : arguments) {
+                // Separator byte plus a null marker keep (null, "x") and ("x", null) apart
+                digest.update((byte) 0x1f);
+                if (argument == null) {
+                    digest.update((byte) 0x00);
+                } else {
+                    digest.update((byte) 0x01);
+                    digest.update(argument.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String key(String sessionId, String fingerprint) {
+        // A retry of a call without a session repeats the same arguments and still names no session
+        return (sessionId == null || sessionId.trim().isEmpty() ? "" : sessionId) + ':' + fingerprint;
+    }
+
+    private static String join(CompletableFuture<String> original) {
+        try {
+            return original.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Entry(String result, long expiresAt) {
+    }
+}
@@ -1,26 +1,49 @@
 package com.example.mcpstateful.state;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents a stateful tool session that maintains conversation state
  * across multiple tool calls in a multi-turn conversation.
+ *
+ * A client may send several turns for the same session concurrently, so the
+ * session is safe to share between threads: reads are lock-free and the
+ * mutators that touch both the collected and the missing parameters are
+ * synchronized so the two never disagree.
+ *
+ * With an {@link OffHeapParamStore} attached, large string values are kept
+ * off-heap and only decoded by {@link #getParam(String)}; their memory is
+ * returned when the value is replaced or removed, or the session is closed.
  */
 public class ToolSession {
-    private String toolName;
-    private ConversationState state = ConversationState.WAITING_FOR_PARAMS;
-    private Map<String, Object> collectedParams = new HashMap<>();
-    private Map<String, String> requiredParams = new HashMap<>();
-    private List<String> missingParams = new ArrayList<>();
-    private String promptMessage;
+    private volatile String toolName;
+    private volatile ConversationState state = ConversationState.WAITING_FOR_PARAMS;
+    private Map<String, Object> collectedParams = new ConcurrentHashMap<>();
+    private Map<String, String> requiredParams = new ConcurrentHashMap<>();
+    private List<String> missingParams = new CopyOnWriteArrayList<>();
+    private volatile String promptMessage;
+    private volatile Object toolState;
+    private volatile ParamListener paramListener;
+    private volatile OffHeapParamStore valueStore;
+    private volatile long lastAccessNanos = System.nanoTime();
+    private boolean claimed;
+    private boolean released;
+
+    /**
+     * Notified when a parameter is added; {@link SessionManager} uses it to publish events.
+     */
+    interface ParamListener {
+        void paramAdded(ToolSession session, String name);
+    }
 
     public ToolSession(String toolName, Map<String, String> requiredParams) {
         this.toolName = toolName;
-        this.requiredParams = new HashMap<>(requiredParams);
-        this.missingParams = new ArrayList<>(requiredParams.keySet());
+        this.requiredParams = new ConcurrentHashMap<>(requiredParams);
+        this.missingParams = new CopyOnWriteArrayList<>(requiredParams.keySet());
     }
 
     /**
@@ -32,9 +55,77 @@ public class ToolSession {
 
     /**
      * Add a parameter to the session and remove it from missing parameters.
+     * A null value counts as not provided and is ignored: the parameter stays
+     * missing, and a value collected earlier is kept.
      */
     public void addParam(String name, Object value) {
-        collectedParams.put(name, value);
+        if (value == null) {
+            return;
+        }
+        synchronized (this) {
+            // A closed session would never return the blocks, so keep late values on the heap
+            OffHeapParamStore store = released ? null : valueStore;
+            releaseValue(collectedParams.put(name, store != null ? store.store(value) : value));
+            missingParams.remove(name);
+            touch();
+        }
+        // Notify outside the lock so event subscribers cannot hold up other turns on the session
+        ParamListener listener = paramListener;
+        if (listener != null) {
+            listener.paramAdded(this, name);
+        }
+    }
+
+    /**
+     * Get a collected parameter value, decoding it if it is held off-heap.
+     *
+     * A value replaced or removed by a concurrent call while it is being read
+     * yields the current value instead.
+     *
+     * @throws SessionClosedException if the value was held off-heap and the
+     *                                session has been closed by another call since
+     */
+    public Object getParam(String name) {
+        Object value = collectedParams.get(name);
+        while (value instanceof OffHeapValue offHeap) {
+            String text = offHeap.decode();
+            if (text != null) {
+                return text;
+            }
+            Object current = collectedParams.get(name);
+            if (current == value) {
+                // Only closing the session releases a value that is still collected
+                throw new SessionClosedException();
+            }
+            value = current;
+        }
+        return value;
+    }
+
+    /**
+     * Remove a collected parameter and release any off-heap memory it holds.
+     */
+    public synchronized void removeParam(String name) {
+        releaseValue(collectedParams.remove(name));
+    }
+
+    /**
+     * Declare an additional required parameter after the session was created.
+     * It only becomes missing if it has not been collected already.
+     */
+    public synchronized void requireParam(String name, String description) {
+        requiredParams.put(name, description);
+        if (!collectedParams.containsKey(name) && !missingParams.contains(name)) {
+            missingParams.add(name);
+        }
+    }
+
+    /**
+     * Stop requiring a parameter, for instance because the tool's inputs were
+     * redeclared. A value already collected for it is kept.
+     */
+    public synchronized void dropRequirement(String name) {
+        requiredParams.remove(name);
         missingParams.remove(name);
     }
 
@@ -42,7 +133,70 @@ public class ToolSession {
      * Get the next missing parameter.
      */
     public String getNextMissingParam() {
-        return missingParams.isEmpty() ? null : missingParams.get(0);
+        // One snapshot read; isEmpty() followed by get(0) could race with addParam
+        Iterator<String> missing = missingParams.iterator();
+        return missing.hasNext() ? missing.next() : null;
+    }
+
+    /**
+     * Claim the right to run the tool for this session; see {@link SessionManager#claimForCompletion}.
+     */
+    synchronized boolean tryClaim() {
+        if (claimed) {
+            return false;
+        }
+        claimed = true;
+        return true;
+    }
+
+    synchronized void unclaim() {
+        claimed = false;
+    }
+
+    synchronized boolean isClaimed() {
+        return claimed;
+    }
+
+    void setParamListener(ParamListener paramListener) {
+        this.paramListener = paramListener;
+    }
+
+    void setValueStore(OffHeapParamStore valueStore) {
+        this.valueStore = valueStore;
+    }
+
+    /**
+     * Release the off-heap memory of every collected value and close the tool
+     * state if it holds resources. Called once the session has been removed;
+     * off-heap values read afterwards throw {@link SessionClosedException}.
+     */
+    synchronized void release() {
+        released = true;
+        collectedParams.values().forEach(ToolSession::releaseValue);
+        if (toolState instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                // The session is gone either way; nothing can act on the failure
+            }
+        }
+    }
+
+    private static void releaseValue(Object value) {
+        if (value instanceof OffHeapValue offHeap) {
+            offHeap.release();
+        }
+    }
+
+    /**
+     * Record activity on the session, resetting its idle time.
+     */
+    void touch() {
+        lastAccessNanos = System.nanoTime();
+    }
+
+    long idleNanos() {
+        return System.nanoTime() - lastAccessNanos;
     }
 
     // Getters and Setters
@@ -62,6 +216,10 @@ public class ToolSession {
         this.state = state;
     }
 
+    /**
+     * Collected parameters as stored. Values held off-heap appear here as
+     * handles; use {@link #getParam(String)} to read a value.
+     */
     public Map<String, Object> getCollectedParams() {
         return collectedParams;
     }
@@ -93,4 +251,17 @@ public class ToolSession {
     public void setPromptMessage(String promptMessage) {
         this.promptMessage = promptMessage;
     }
-}
\ No newline at end of file
+
+    /**
+     * Tool-specific working state kept alongside the collected parameters,
+     * such as a parsed expression that is reused across turns. State that is
+     * {@link AutoCloseable} is closed when the session ends.
+     */
+    public Object getToolState() {
+        return toolState;
+    }
+
+    public void setToolState(Object toolState) {
+        this.toolState = toolState;
+    }
+}
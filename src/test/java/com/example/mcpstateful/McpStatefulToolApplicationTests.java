@@ -1,20 +1,40 @@
 package com.example.mcpstateful;
 
+import com.example.mcpstateful.response.ResponseFormat;
+import com.example.mcpstateful.response.ToolResult;
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.state.SessionEvent;
 import com.example.mcpstateful.state.SessionManager;
 import com.example.mcpstateful.state.ToolSession;
 
+import com.example.mcpstateful.service.SessionWatchService;
 import com.example.mcpstateful.service.StatefulCalculatorService;
+import com.example.mcpstateful.service.StatefulFileSearchService;
 import com.example.mcpstateful.service.StatefulFileService;
+import com.example.mcpstateful.service.StatefulPipelineService;
 import com.example.mcpstateful.service.StatefulProfileBuilderService;
+import com.example.mcpstateful.service.StatefulProfileImportService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import reactor.core.Disposable;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-@SpringBootTest
+@SpringBootTest(properties = "stateful-tools.response-format=text")
 class McpStatefulToolApplicationTests {
 
     @Autowired
@@ -23,12 +43,27 @@ class McpStatefulToolApplicationTests {
     @Autowired
     private StatefulFileService statefulFileService;
 
+    @Autowired
+    private StatefulFileSearchService statefulFileSearchService;
+
     @Autowired
     private StatefulCalculatorService statefulCalculatorService;
 
     @Autowired
     private StatefulProfileBuilderService statefulProfileBuilderService;
 
+    @Autowired
+    private StatefulProfileImportService statefulProfileImportService;
+
+    @Autowired
+    private StatefulPipelineService statefulPipelineService;
+
+    @Autowired
+    private SessionWatchService sessionWatchService;
+
+    @Autowired
+    private ToolResultRenderer toolResultRenderer;
+
     
 
     @Test
@@ -91,11 +126,25 @@ class McpStatefulToolApplicationTests {
     @Test
     void testCalculatorTool() {
         // Test single-turn calculation
-        String result = statefulCalculatorService.calculate("2 + 2 * 3", "decimal", null);
+        String result = statefulCalculatorService.calculate("2 + 2 * 3", "decimal", null, null);
         assertThat(result).contains("Expression: 2 + 2 * 3");
         assertThat(result).contains("Result: 8");
     }
 
+    @Test
+    void testCalculatorVariablesAcrossTurns() {
+        String result1 = statefulCalculatorService.calculate("a * x + b", null, "x=3", null);
+        assertThat(result1).contains("Missing parameter: **a**");
+        String sessionId = extractSessionId(result1);
+
+        String result2 = statefulCalculatorService.calculate(null, null, "a=2", sessionId);
+        assertThat(result2).contains("Missing parameter: **b**");
+
+        String result3 = statefulCalculatorService.calculate(null, null, "b=sqrt(16)", sessionId);
+        assertThat(result3).contains("Result: 10");
+        assertThat(sessionManager.getSession(sessionId)).isNull();
+    }
+
     @Test
     void testProfileBuilderFlow() {
         // Test profile building start
@@ -113,4 +162,227 @@ class McpStatefulToolApplicationTests {
         assertThat(result3).contains("Profile created successfully!");
         assertThat(sessionManager.getSession(sessionId)).isNull(); // Session should be cleaned up
     }
-}
\ No newline at end of file
+
+    @Test
+    void testProfileBuilderRejectsAnOutOfRangeAge() {
+        String result1 = statefulProfileBuilderService.buildProfile("Test User", "test@example.com", 200, "reading", null);
+        assertThat(result1).contains("Invalid age: 200");
+        String sessionId = extractSessionId(result1);
+        assertThat(sessionManager.getSession(sessionId)).isNotNull(); // Kept for a corrected retry
+
+        assertThat(statefulProfileBuilderService.buildProfile(null, null, -5, null, sessionId)).contains("Invalid age: -5");
+
+        String result3 = statefulProfileBuilderService.buildProfile(null, null, 30, null, sessionId);
+        assertThat(result3).contains("Profile created successfully!", "\"age\" : 30");
+        assertThat(sessionManager.getSession(sessionId)).isNull();
+    }
+
+    @Test
+    void testProfileImportFlow() throws IOException {
+        Path source = Files.createTempFile("profiles", ".csv");
+        Path output = source.resolveSibling(source.getFileName() + ".out.ndjson");
+        Files.write(source, List.of(
+                "name,email,age,preferences",
+                "Ada,ada@example.com,36,\"math, engines\"",
+                "Bob,,40,chess",
+                "Cy,cy@example.com,old,hiking"));
+
+        String result1 = statefulProfileImportService.importProfiles(source.toString(), null, null, null);
+        assertThat(result1).contains("output_path");
+        String sessionId = extractSessionId(result1);
+        assertThat(sessionId).isNotNull();
+
+        String result2 = statefulProfileImportService.importProfiles(null, output.toString(), null, sessionId);
+        assertThat(result2).contains("Profiles written: 1");
+        assertThat(result2).contains("Records rejected: 2");
+        List<String> profiles = Files.readAllLines(output);
+        assertThat(profiles).hasSize(1);
+        assertThat(profiles.get(0)).contains("\"preferences\":[\"math\",\"engines\"]");
+        assertThat(sessionManager.getSession(sessionId)).isNull();
+    }
+
+    @Test
+    void testCompactJsonResults() {
+        ToolResult needsInput = ToolResult.needsInput("calculate", "abc-123", "expression", "Expression to evaluate", "complete the calculation");
+        assertThat(toolResultRenderer.render(needsInput, ResponseFormat.JSON)).isEqualTo(
+                "{\"status\":\"needs_input\",\"tool\":\"calculate\",\"sessionId\":\"abc-123\"," +
+                "\"missing\":\"expression\",\"description\":\"Expression to evaluate\"}");
+        assertThat(toolResultRenderer.render(needsInput, ResponseFormat.TEXT)).contains("Session ID: `abc-123`");
+
+        ToolResult success = ToolResult.success("calculate", Map.of("result", "8"), () -> "Result: 8");
+        assertThat(toolResultRenderer.render(success, ResponseFormat.JSON))
+                .isEqualTo("{\"status\":\"success\",\"tool\":\"calculate\",\"result\":{\"result\":\"8\"}}");
+    }
+
+    @Test
+    void testRetriedFinalTurnIsNotExecutedAgain() throws IOException {
+        Path target = Files.createTempFile("retry", ".txt");
+        String sessionId = extractSessionId(statefulFileService.createFile(target.toString(), null, null));
+
+        String first = statefulFileService.createFile(target.toString(), "written once", sessionId);
+        assertThat(first).contains("Successfully created file");
+        Files.delete(target);
+
+        String retry = statefulFileService.createFile(target.toString(), "written once", sessionId);
+        assertThat(retry).isEqualTo(first);
+        assertThat(Files.exists(target)).isFalse(); // The retry must not write the file again
+        assertThat(sessionManager.getSession(sessionId)).isNull();
+    }
+
+    @Test
+    void testConcurrentFinalTurnsCreateTheFileOnce() throws Exception {
+        Path target = Files.createTempFile("race", ".txt");
+        ExecutorService turns = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 50; round++) {
+                String sessionId = extractSessionId(statefulFileService.createFile(target.toString(), null, null));
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<String>> results = new ArrayList<>();
+                for (String content : List.of("first", "second")) {
+                    results.add(turns.submit(() -> {
+                        start.await();
+                        return statefulFileService.createFile(null, content, sessionId);
+                    }));
+                }
+                start.countDown();
+
+                int created = 0;
+                for (Future<String> result : results) {
+                    if (result.get(5, TimeUnit.SECONDS).contains("Successfully created file")) {
+                        created++;
+                    }
+                }
+                assertThat(created).as("round %d", round).isEqualTo(1);
+                sessionManager.deleteSession(sessionId); // A late turn may have started a new session under the ID
+            }
+        } finally {
+            turns.shutdownNow();
+        }
+    }
+
+    @Test
+    void testTurnsOnASessionClosedMeanwhileAreReported() {
+        // Large enough to be held off-heap, so it cannot be read once the session is closed
+        String expression = "x * 1." + "0".repeat(20_000);
+        String sessionId = extractSessionId(statefulCalculatorService.calculate(expression, null, null, null));
+        // Close the session as a concurrent call would, after this turn fetched it but before it reads the expression
+        Disposable closer = sessionManager.events()
+                .subscribe(event -> {
+                    if (event.type() == SessionEvent.Type.PARAM_ADDED && event.sessionId().equals(sessionId)) {
+                        sessionManager.deleteSession(sessionId);
+                    }
+                });
+        try {
+            String result = statefulCalculatorService.calculate(null, "scientific", null, sessionId);
+
+            assertThat(result).contains("closed by another call");
+            assertThat(result).doesNotContain("Error in calculation");
+        } finally {
+            closer.dispose();
+        }
+    }
+
+    @Test
+    void testPipelineFlow() throws IOException {
+        Path target = Files.createTempFile("pipeline", ".txt");
+        String steps = "[{\"tool\":\"calculate\"},{\"tool\":\"create_file\",\"bind\":{\"content\":\"calculate.result\"}}]";
+
+        String result1 = statefulPipelineService.runPipeline(steps, "{\"calculate.expression\":\"6 * 7\"}", null);
+        assertThat(result1).contains("create_file.file_path");
+        assertThat(result1).doesNotContain("create_file.content"); // Bound to the calculate output
+        String sessionId = extractSessionId(result1);
+
+        String result2 = statefulPipelineService.runPipeline(null, "{\"create_file.file_path\":\"" + target + "\"}", sessionId);
+        assertThat(result2).contains("Pipeline completed (2 steps)");
+        assertThat(Files.readString(target)).isEqualTo("42");
+        assertThat(sessionManager.getSession(sessionId)).isNull();
+    }
+
+    @Test
+    void testPipelineStepsCanBeRedeclared() {
+        String result1 = statefulPipelineService.runPipeline(
+                "[{\"tool\":\"calculate\"},{\"tool\":\"create_file\"}]", null, null);
+        assertThat(result1).contains("calculate.expression");
+        String sessionId = extractSessionId(result1);
+
+        // The new pipeline no longer has a create_file step, so its inputs are no longer asked for
+        String result2 = statefulPipelineService.runPipeline(
+                "[{\"tool\":\"calculate\"}]", "{\"calculate.expression\":\"1 + 1\"}", sessionId);
+        assertThat(result2).contains("Pipeline completed (1 step)");
+        assertThat(sessionManager.getSession(sessionId)).isNull();
+    }
+
+    @Test
+    void testPipelineRetryResumesAtTheFailedStep() throws IOException {
+        Path target = Files.createTempFile("pipeline-retry", ".txt");
+        String steps = "[{\"tool\":\"create_file\"},{\"tool\":\"calculate\"}]";
+        String params = "{\"create_file.file_path\":\"" + target + "\",\"create_file.content\":\"hi\","
+                + "\"calculate.expression\":\"1 +\"}";
+
+        String result1 = statefulPipelineService.runPipeline(steps, params, null);
+        assertThat(result1).contains("Step 'calculate' failed");
+        assertThat(Files.readString(target)).isEqualTo("hi");
+        String sessionId = extractSessionId(result1);
+
+        // The file written by the first attempt is not written again
+        Files.delete(target);
+        String result2 = statefulPipelineService.runPipeline(null, "{\"calculate.expression\":\"1 + 1\"}", sessionId);
+        assertThat(result2).contains("Pipeline completed (2 steps)");
+        assertThat(Files.exists(target)).isFalse();
+    }
+
+    @Test
+    void testSessionEventsAreWatched() throws Exception {
+        CompletableFuture<String> watch = CompletableFuture.supplyAsync(
+                () -> sessionWatchService.watchSessions("calculate", null, 6, 10, null));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sessionManager.getEventSubscriberCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        String sessionId = extractSessionId(statefulCalculatorService.calculate(null, null, null, null));
+        statefulCalculatorService.calculate("2 + 3", null, null, sessionId);
+
+        // created, format, expression, format again, ready, completed
+        String summary = watch.get(10, TimeUnit.SECONDS);
+        assertThat(summary).contains("Delivered: 6", "Dropped (client too slow): 0");
+        assertThat(summary).contains(
+                "- created `" + sessionId + "` (calculate) missing: [expression]",
+                "- param_added `" + sessionId + "` (calculate) parameter: expression",
+                "- ready `" + sessionId + "` (calculate)",
+                "- completed `" + sessionId + "` (calculate)");
+    }
+
+    @Test
+    void testFileSearchFlow() throws IOException {
+        Path root = Files.createTempDirectory("search");
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(Files.createDirectories(root.resolve("dir" + i)).resolve("note" + i + ".txt"),
+                    "first line\nTODO item " + i + "\n");
+        }
+        Files.writeString(root.resolve("readme.md"), "TODO elsewhere");
+
+        String result1 = statefulFileSearchService.searchFiles(root.toString(), null, "TODO", null, 2, null, null);
+        assertThat(result1).contains("name_pattern");
+        String sessionId = extractSessionId(result1);
+
+        String page1 = statefulFileSearchService.searchFiles(null, "*.txt", null, null, 2, null, sessionId);
+        assertThat(page1).contains("File search results (page 1)", ":2: TODO item", "More results are available");
+        assertThat(sessionManager.getSession(sessionId)).isNotNull(); // The session is the cursor
+
+        // A retry of a page whose response was lost gets the same matches, not the next ones
+        String replayed = statefulFileSearchService.searchFiles(null, null, null, null, 2, 1, sessionId);
+        assertThat(matchLines(replayed)).isEqualTo(matchLines(page1));
+        assertThat(statefulFileSearchService.searchFiles(null, null, null, null, 2, 3, sessionId))
+                .contains("Page 3 is not available; the next page is 2");
+
+        String page2 = statefulFileSearchService.searchFiles(null, null, null, null, 2, 2, sessionId);
+        assertThat(page2).contains("File search results (page 2)", "Files visited: 4 in 4 directories");
+        assertThat(page2).doesNotContain("readme.md", "More results are available");
+        assertThat(sessionManager.getSession(sessionId)).isNull();
+    }
+
+    private static List<String> matchLines(String page) {
+        return page.lines().filter(line -> line.startsWith("- ")).toList();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.mcpstateful;
+
+import com.example.mcpstateful.service.StatefulCalculatorService;
+import com.example.mcpstateful.service.StatefulFileService;
+import com.example.mcpstateful.state.SessionManager;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the real tools with the default response format and reads their
+ * output the way a client would, as JSON.
+ */
+@SpringBootTest
+class McpStatefulToolJsonResultTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private StatefulFileService statefulFileService;
+
+    @Autowired
+    private StatefulCalculatorService statefulCalculatorService;
+
+    @Test
+    void createFileTurnsAreCompactJson() throws IOException {
+        Path target = Files.createTempFile("json-result", ".txt");
+
+        JsonNode first = objectMapper.readTree(statefulFileService.createFile(null, null, null));
+        assertThat(first.path("status").asText()).isEqualTo("needs_input");
+        assertThat(first.path("tool").asText()).isEqualTo("create_file");
+        assertThat(first.path("missing").asText()).isEqualTo("file_path");
+        String sessionId = first.path("sessionId").asText();
+        assertThat(sessionManager.sessionExists(sessionId)).isTrue();
+
+        JsonNode second = objectMapper.readTree(statefulFileService.createFile(target.toString(), null, sessionId));
+        assertThat(second.path("status").asText()).isEqualTo("needs_input");
+        assertThat(second.path("sessionId").asText()).isEqualTo(sessionId);
+        assertThat(second.path("missing").asText()).isEqualTo("content");
+
+        JsonNode third = objectMapper.readTree(statefulFileService.createFile(target.toString(), "hello json", sessionId));
+        assertThat(third.path("status").asText()).isEqualTo("success");
+        assertThat(third.has("sessionId")).isFalse();
+        assertThat(third.path("result").path("path").asText()).isEqualTo(target.toString());
+        assertThat(third.path("result").path("sizeBytes").asLong()).isEqualTo(10);
+        assertThat(Files.readString(target)).isEqualTo("hello json");
+        assertThat(sessionManager.sessionExists(sessionId)).isFalse();
+    }
+
+    @Test
+    void errorsKeepTheSessionIdInJson() throws IOException {
+        JsonNode result = objectMapper.readTree(statefulCalculatorService.calculate("2 +", null, null, null));
+
+        assertThat(result.path("status").asText()).isEqualTo("error");
+        assertThat(result.path("error").asText()).isNotBlank();
+        assertThat(sessionManager.sessionExists(result.path("sessionId").asText())).isTrue();
+    }
+}
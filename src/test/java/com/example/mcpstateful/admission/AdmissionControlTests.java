@@ -0,0 +1,77 @@
+package com.example.mcpstateful.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlTests {
+
+    private static final long TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void concurrencyLimitRejectsCallsOverTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, TARGET_NANOS);
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+
+        limit.release(TimeUnit.MILLISECONDS.toNanos(5), true);
+        assertThat(limit.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void concurrencyLimitShrinksOnSlowCallsAndGrowsOnFastOnes() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 2, 40, TARGET_NANOS);
+
+        for (int i = 0; i < 10; i++) {
+            limit.tryAcquire();
+            limit.release(TARGET_NANOS * 5, true);
+        }
+        int shrunk = limit.currentLimit();
+        assertThat(shrunk).isLessThan(20).isGreaterThanOrEqualTo(2);
+
+        for (int round = 0; round < 50; round++) {
+            int acquired = 0;
+            while (limit.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limit.release(TARGET_NANOS / 10, true);
+            }
+        }
+        assertThat(limit.currentLimit()).isGreaterThan(shrunk);
+        assertThat(limit.inFlight()).isZero();
+    }
+
+    @Test
+    void tokenBucketAllowsBurstThenReportsWait() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+
+        assertThat(acquire(bucket)).isZero();
+        assertThat(acquire(bucket)).isZero();
+        assertThat(acquire(bucket)).isZero();
+        assertThat(acquire(bucket)).isPositive().isLessThanOrEqualTo(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void tokenBucketsAreSpentTogetherOrNotAtAll() {
+        TokenBucket client = new TokenBucket(1, 2);
+        TokenBucket tool = new TokenBucket(1, 1);
+
+        assertThat(TokenBucket.tryAcquireBoth(client, tool)).containsExactly(0L, 0L);
+
+        // The tool bucket is empty, so the client keeps its remaining token
+        long[] waits = TokenBucket.tryAcquireBoth(client, tool);
+        assertThat(waits[0]).isZero();
+        assertThat(waits[1]).isPositive();
+        assertThat(acquire(client)).isZero();
+    }
+
+    private static long acquire(TokenBucket bucket) {
+        // Paired with a bucket that never runs out, so only the given one can refuse
+        return TokenBucket.tryAcquireBoth(bucket, new TokenBucket(0, 1))[0];
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.mcpstateful.admission;
+
+import com.example.mcpstateful.response.ToolResultRenderer;
+import com.example.mcpstateful.state.SessionManager;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tool calls through the admission wrapper, as the MCP server makes them.
+ */
+@SpringBootTest(properties = {
+        "stateful-tools.admission.client-concurrency=4",
+        "stateful-tools.admission.client-rate.permits-per-second=0",
+        "stateful-tools.admission.tool-rate.permits-per-second=0",
+        "stateful-tools.admission.tool-concurrency.initial-limit=8",
+        "stateful-tools.admission.tool-concurrency.tools.recovering_tool.target-latency-ms=20",
+        "stateful-tools.admission.tool-concurrency.tools.watching_tool.target-latency-ms=1",
+        "stateful-tools.admission.tool-concurrency.tools.watching_tool.fixed-limit=3",
+        "stateful-tools.admission.session-high-watermark=0.5",
+        "stateful-tools.sessions.max-sessions=10"
+})
+class AdmissionControlledToolCallbackTests {
+
+    private static final String SESSION_SCHEMA = "{\"type\":\"object\",\"properties\":{\"sessionId\":{\"type\":\"string\"}}}";
+    private static final String PLAIN_SCHEMA = "{\"type\":\"object\",\"properties\":{}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private ToolResultRenderer renderer;
+
+    @AfterEach
+    void deleteSessions() {
+        sessionManager.listSessions().keySet().forEach(sessionManager::deleteSession);
+    }
+
+    @Test
+    void callsOverTheClientLimitAreRejectedWithoutRunning() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch running = new CountDownLatch(4);
+        CountDownLatch finish = new CountDownLatch(1);
+        ToolCallback busy = wrap("busy_tool", PLAIN_SCHEMA, () -> {
+            executions.incrementAndGet();
+            running.countDown();
+            await(finish);
+            return "done";
+        });
+
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            calls.add(CompletableFuture.supplyAsync(() -> busy.call("{}")));
+        }
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+        JsonNode rejected = objectMapper.readTree(busy.call("{}"));
+        finish.countDown();
+
+        assertThat(rejected.path("status").asText()).isEqualTo("rejected");
+        assertThat(rejected.path("error").asText()).contains("Too many concurrent calls");
+        assertThat(rejected.path("retryAfterMs").asLong()).isPositive();
+        for (CompletableFuture<String> call : calls) {
+            assertThat(call.get(5, TimeUnit.SECONDS)).isEqualTo("done");
+        }
+        assertThat(executions.get()).isEqualTo(4);
+    }
+
+    @Test
+    void callsThatWouldOpenASessionAreRefusedNearCapacity() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            sessionManager.createSession(sessionManager.generateSessionId(), "calculate", Map.of());
+        }
+        AtomicInteger executions = new AtomicInteger();
+        ToolCallback tool = wrap("session_tool", SESSION_SCHEMA, () -> "run " + executions.incrementAndGet());
+
+        JsonNode rejected = objectMapper.readTree(tool.call("{}"));
+
+        assertThat(rejected.path("status").asText()).isEqualTo("rejected");
+        assertThat(rejected.path("error").asText()).contains("near capacity");
+        assertThat(executions.get()).isZero();
+    }
+
+    @Test
+    void theSessionStoreRefusesSessionsBeyondItsCapacity() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            sessionManager.createSession(sessionManager.generateSessionId(), "calculate", Map.of());
+        }
+        // Not session-based as far as admission can tell, so only the store itself can refuse it
+        ToolCallback tool = wrap("opaque_tool", PLAIN_SCHEMA, () -> {
+            sessionManager.createSession(sessionManager.generateSessionId(), "opaque_tool", Map.of());
+            return "created";
+        });
+
+        JsonNode rejected = objectMapper.readTree(tool.call("{}"));
+
+        assertThat(rejected.path("status").asText()).isEqualTo("rejected");
+        assertThat(rejected.path("error").asText()).contains("Session store is full");
+        assertThat(sessionManager.getSessionCount()).isEqualTo(10);
+    }
+
+    @Test
+    void aToolLimitRecoversOnceCallsAreFastAgain() throws Exception {
+        AtomicInteger delayMillis = new AtomicInteger(60);
+        ToolCallback tool = wrap("recovering_tool", PLAIN_SCHEMA, () -> {
+            sleep(delayMillis.get());
+            return "done";
+        });
+
+        for (int i = 0; i < 15; i++) {
+            tool.call("{}");
+        }
+        int shrunk = admissionController.currentToolLimit("recovering_tool");
+        assertThat(shrunk).isLessThan(8);
+
+        delayMillis.set(1);
+        ExecutorService load = Executors.newFixedThreadPool(4);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try {
+            while (admissionController.currentToolLimit("recovering_tool") <= shrunk && System.nanoTime() < deadline) {
+                List<CompletableFuture<String>> batch = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    batch.add(CompletableFuture.supplyAsync(() -> tool.call("{}"), load));
+                }
+                CompletableFuture.allOf(batch.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            load.shutdownNow();
+        }
+        assertThat(admissionController.currentToolLimit("recovering_tool")).isGreaterThan(shrunk);
+    }
+
+    @Test
+    void toolsWithAFixedLimitAreNotLimitedByLatency() {
+        ToolCallback watch = wrap("watching_tool", PLAIN_SCHEMA, () -> {
+            sleep(5);
+            return "done";
+        });
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(watch.call("{}")).isEqualTo("done");
+        }
+
+        assertThat(admissionController.currentToolLimit("watching_tool")).isEqualTo(3);
+    }
+
+    @Test
+    void idleClientsAreForgotten() throws Exception {
+        wrap("quick_tool", PLAIN_SCHEMA, () -> "done").call("{}");
+        assertThat(admissionController.getTrackedClientCount()).isPositive();
+
+        Thread.sleep(5);
+        admissionController.evictClientsIdleLongerThan(Duration.ofMillis(1));
+
+        assertThat(admissionController.getTrackedClientCount()).isZero();
+    }
+
+    private ToolCallback wrap(String name, String inputSchema, Supplier<String> body) {
+        ToolCallback delegate = new ToolCallback() {
+            private final ToolDefinition definition = new TestToolDefinition(name, "Test tool", inputSchema);
+
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return definition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return body.get();
+            }
+        };
+        return new AdmissionControlledToolCallback(delegate, admissionController, sessionManager, renderer);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record TestToolDefinition(String name, String description, String inputSchema) implements ToolDefinition {
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.mcpstateful.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledExpressionTests {
+
+    @Test
+    void evaluatesWithPrecedenceAndConstants() {
+        assertThat(CompiledExpression.compile("2 + 2 * 3").evaluateBound()).isEqualTo(8.0);
+        assertThat(CompiledExpression.compile("10 - 2 - 3").evaluateBound()).isEqualTo(5.0);
+        assertThat(CompiledExpression.compile("(10 + 5) * 2 / -3").evaluateBound()).isEqualTo(-10.0);
+        assertThat(CompiledExpression.compile("sqrt(16) + pi - pi").evaluateBound()).isEqualTo(4.0);
+    }
+
+    @Test
+    void recomputesOnlySubexpressionsThatDependOnTheBoundVariable() {
+        CompiledExpression expression = CompiledExpression.compile("a * x + b");
+        assertThat(expression.variables()).containsExactly("a", "x", "b");
+
+        expression.bind("a", 2);
+        assertThat(expression.evaluateBound()).isNull();
+        expression.bind("x", 3);
+        assertThat(expression.evaluateBound()).isNull();
+        int partial = expression.computations(); // a, x and a * x are cached
+
+        expression.bind("b", 4);
+        assertThat(expression.evaluateBound()).isEqualTo(10.0);
+        assertThat(expression.computations() - partial).isEqualTo(2); // b and the sum
+
+        expression.bind("b", 5);
+        assertThat(expression.evaluateBound()).isEqualTo(11.0);
+        assertThat(expression.computations() - partial).isEqualTo(4); // a * x is not recomputed
+    }
+
+    @Test
+    void aRebindDuringEvaluationLeavesNoStaleValue() throws Exception {
+        // A long chain, so evaluating takes long enough for a concurrent turn to re-bind a variable meanwhile
+        CompiledExpression expression = CompiledExpression.compile("a" + " + b".repeat(200));
+        expression.bind("b", 0);
+        ExecutorService turns = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 1; round <= 2_000; round++) {
+                int value = round;
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> rebind = turns.submit(() -> {
+                    start.await();
+                    expression.bind("a", value);
+                    return null;
+                });
+                Future<?> evaluate = turns.submit(() -> {
+                    start.await();
+                    return expression.evaluateBound();
+                });
+                start.countDown();
+                rebind.get(5, TimeUnit.SECONDS);
+                evaluate.get(5, TimeUnit.SECONDS);
+
+                assertThat(expression.evaluateBound()).as("round %d", round).isEqualTo((double) value);
+            }
+        } finally {
+            turns.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsMalformedExpressions() {
+        assertThatThrownBy(() -> CompiledExpression.compile("2 +")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CompiledExpression.compile("log(2)")).hasMessageContaining("Unknown function");
+        assertThatThrownBy(() -> CompiledExpression.compile("1 / 0").evaluateBound()).isInstanceOf(ArithmeticException.class);
+    }
+}
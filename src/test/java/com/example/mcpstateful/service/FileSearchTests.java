@@ -0,0 +1,280 @@
+package com.example.mcpstateful.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileSearchTests {
+
+    private static final FileSearch.Limits NO_LIMITS =
+            new FileSearch.Limits(16, 100_000, Duration.ofSeconds(10), 64L * 1024 * 1024);
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final DirectoryListingCache listings = new DirectoryListingCache(100, 60);
+
+    @TempDir
+    Path root;
+
+    @AfterEach
+    void shutDownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void findsFilesByNameAcrossNestedDirectories() throws IOException {
+        write("a/notes.txt", "one");
+        write("a/b/c/deep.txt", "two");
+        write("a/b/skip.md", "three");
+
+        List<FileSearch.Match> matches = drain(search("*.txt", null, NO_LIMITS), 10);
+
+        assertThat(matches).extracting(FileSearch.Match::path).containsExactlyInAnyOrder(
+                root.resolve("a/notes.txt").toString(), root.resolve("a/b/c/deep.txt").toString());
+        assertThat(matches).extracting(FileSearch.Match::line).containsOnlyNulls();
+    }
+
+    @Test
+    void reportsTheFirstMatchingLineOfSmallAndMappedFiles() throws IOException {
+        write("small.log", "alpha\nbeta needle here\nneedle again\n");
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 2 * FileSearch.MAP_THRESHOLD_BYTES) {
+            large.append("filler line without the word\n");
+        }
+        large.append("  the needle is near the end  \n");
+        write("large.log", large.toString());
+        write("other.log", "nothing to see");
+
+        List<FileSearch.Match> matches = drain(search("*.log", "needle", NO_LIMITS), 10);
+
+        assertThat(matches).containsExactlyInAnyOrder(
+                new FileSearch.Match(root.resolve("small.log").toString(), 2, "beta needle here"),
+                new FileSearch.Match(root.resolve("large.log").toString(),
+                        (int) large.chars().filter(c -> c == '\n').count(), "the needle is near the end"));
+    }
+
+    @Test
+    void servesResultsPageByPage() throws IOException {
+        for (int i = 0; i < 25; i++) {
+            write("dir" + (i % 3) + "/file" + i + ".txt", "x");
+        }
+        FileSearch search = search("*", null, NO_LIMITS);
+
+        FileSearch.Page first = search.nextPage(10);
+        FileSearch.Page second = search.nextPage(10);
+        FileSearch.Page third = search.nextPage(10);
+
+        assertThat(first.matches()).hasSize(10);
+        assertThat(first.finished()).isFalse();
+        assertThat(second.matches()).hasSize(10);
+        assertThat(third.matches()).hasSize(5);
+        assertThat(third.finished()).isTrue();
+        assertThat(third.number()).isEqualTo(3);
+        List<FileSearch.Match> all = new ArrayList<>(first.matches());
+        all.addAll(second.matches());
+        all.addAll(third.matches());
+        assertThat(all).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void servesTheLastPageAgainOnRequest() throws IOException {
+        for (int i = 0; i < 15; i++) {
+            write("file" + i + ".txt", "x");
+        }
+        FileSearch search = search("*", null, NO_LIMITS);
+
+        FileSearch.Page first = search.page(null, 10);
+        FileSearch.Page replayed = search.page(1, 10);
+        FileSearch.Page second = search.page(2, 10);
+
+        assertThat(replayed).isSameAs(first);
+        assertThat(second.number()).isEqualTo(2);
+        assertThat(second.matches()).hasSize(5);
+        assertThat(search.page(2, 10)).isSameAs(second);
+        assertThatThrownBy(() -> search.page(1, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> search.page(4, 10)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void servesAShortPageInsteadOfWaitingForASlowWalk() throws Exception {
+        write("quick.txt", "x");
+        write("slow/later.txt", "x");
+        CountDownLatch slowDirectory = new CountDownLatch(1);
+        DirectoryListingCache slowListings = new DirectoryListingCache(100, 60) {
+            @Override
+            Listing list(Path directory) throws IOException {
+                if (directory.endsWith("slow")) {
+                    try {
+                        slowDirectory.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.list(directory);
+            }
+        };
+        FileSearch search = FileSearch.start(root, FileSystems.getDefault().getPathMatcher("glob:*.txt"), null,
+                NO_LIMITS, 10, slowListings, pool);
+
+        long startNanos = System.nanoTime();
+        FileSearch.Page first = search.nextPage(10);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        slowDirectory.countDown();
+
+        assertThat(waitedMillis).isLessThan(FileSearch.MAX_PAGE_WAIT.toMillis() * 4);
+        assertThat(first.matches()).extracting(FileSearch.Match::path)
+                .containsExactly(root.resolve("quick.txt").toString());
+        assertThat(first.finished()).isFalse();
+        assertThat(drain(search, 10)).extracting(FileSearch.Match::path)
+                .containsExactly(root.resolve("slow/later.txt").toString());
+    }
+
+    @Test
+    void stopsAtTheDepthAndFileLimits() throws IOException {
+        write("top.txt", "x");
+        write("one/two/three/deep.txt", "x");
+        for (int i = 0; i < 50; i++) {
+            write("many/file" + i + ".txt", "x");
+        }
+
+        List<FileSearch.Match> shallow = drain(search("*.txt", null,
+                new FileSearch.Limits(0, 100_000, Duration.ofSeconds(10), Long.MAX_VALUE)), 100);
+        assertThat(shallow).extracting(FileSearch.Match::path).containsExactly(root.resolve("top.txt").toString());
+
+        FileSearch bounded = search("*.txt", null,
+                new FileSearch.Limits(16, 20, Duration.ofSeconds(10), Long.MAX_VALUE));
+        assertThat(drain(bounded, 100).size()).isLessThanOrEqualTo(20);
+        assertThat(bounded.stats()).containsEntry("filesVisited", 20).containsEntry("stoppedBy", "max_files");
+    }
+
+    @Test
+    void walksOnlyAFewPagesAheadOfTheCaller() throws IOException, InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            write("many/file" + i + ".txt", "x");
+        }
+
+        FileSearch search = search("*.txt", null, NO_LIMITS, 5);
+        TimeUnit.MILLISECONDS.sleep(300);
+
+        // Every file matches, so the walk has stopped once the queue is full; each worker holds one more match
+        int ahead = FileSearch.QUEUED_PAGES * 5 + pool.getParallelism();
+        assertThat((Integer) search.stats().get("filesVisited")).isLessThanOrEqualTo(ahead);
+        assertThat(drain(search, 5)).hasSize(200);
+        assertThat(search.stats()).containsEntry("filesVisited", 200).doesNotContainKey("stoppedBy");
+    }
+
+    @Test
+    void skipsFilesTooLargeToScan() throws IOException {
+        write("big.txt", "needle".repeat(100));
+        write("small.txt", "needle");
+
+        FileSearch search = search("*.txt", "needle",
+                new FileSearch.Limits(16, 100_000, Duration.ofSeconds(10), 100));
+
+        assertThat(drain(search, 10)).extracting(FileSearch.Match::path)
+                .containsExactly(root.resolve("small.txt").toString());
+        assertThat(search.stats()).containsEntry("skipped", 1);
+    }
+
+    @Test
+    void repeatedSearchesReuseUnchangedListings() throws IOException {
+        write("a/one.txt", "x");
+        write("b/two.txt", "x");
+        drain(search("*.txt", null, NO_LIMITS), 10);
+        long misses = listings.getMisses();
+
+        drain(search("*.txt", null, NO_LIMITS), 10);
+        assertThat(listings.getMisses()).isEqualTo(misses);
+        assertThat(listings.getHits()).isEqualTo(3);
+
+        // A new entry changes the directory's modification time, so its listing is read again.
+        // Pin the time to a distinct value so a coarse file system clock cannot hide the change.
+        write("a/three.txt", "x");
+        Files.setLastModifiedTime(root.resolve("a"), FileTime.fromMillis(0));
+        assertThat(drain(search("*.txt", null, NO_LIMITS), 10)).hasSize(3);
+        assertThat(listings.getMisses()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    void showsTheTextAroundAMatchFarIntoALongLine() {
+        // Three-byte characters, so a window cut at a fixed offset would split one
+        String line = "€".repeat(300) + "needle" + "€".repeat(300);
+        ByteBuffer bytes = ByteBuffer.wrap(("first\n" + line + "\n").getBytes(StandardCharsets.UTF_8));
+        int at = FileSearch.indexOf(bytes, "needle".getBytes(StandardCharsets.UTF_8));
+
+        FileSearch.Match match = FileSearch.matchAt(root.resolve("long.txt"), bytes, at);
+
+        assertThat(match.line()).isEqualTo(2);
+        assertThat(match.text()).contains("€needle€").doesNotContain("\uFFFD");
+        assertThat(match.text().getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(200);
+        assertThat(match.text().indexOf("needle")).isGreaterThan(30);
+    }
+
+    @Test
+    void onlySearchesInsideTheAllowedRoots() throws IOException {
+        Path allowed = Files.createDirectories(root.resolve("allowed/sub"));
+        Path outside = Files.createDirectories(root.resolve("outside"));
+        Path escape = Files.createSymbolicLink(allowed.resolve("escape"), outside);
+        List<String> allowedRoots = List.of(root.resolve("allowed").toString());
+
+        assertThat(FileSearch.checkRoot(allowed, allowedRoots)).isEqualTo(allowed.toRealPath());
+        assertThat(FileSearch.checkRoot(outside, List.of())).isEqualTo(outside.toRealPath());
+        for (Path rejected : List.of(outside, allowed.resolve("../../outside"), escape)) {
+            assertThatThrownBy(() -> FileSearch.checkRoot(rejected, allowedRoots))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("not allowed");
+        }
+        assertThatThrownBy(() -> FileSearch.checkRoot(root.resolve("missing"), allowedRoots))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Not a directory");
+    }
+
+    @Test
+    void findsByteSequences() {
+        ByteBuffer haystack = ByteBuffer.wrap("abcabd".getBytes(StandardCharsets.UTF_8));
+        assertThat(FileSearch.indexOf(haystack, "abd".getBytes(StandardCharsets.UTF_8))).isEqualTo(3);
+        assertThat(FileSearch.indexOf(haystack, "abe".getBytes(StandardCharsets.UTF_8))).isEqualTo(-1);
+        assertThat(FileSearch.indexOf(haystack, "abcabdx".getBytes(StandardCharsets.UTF_8))).isEqualTo(-1);
+    }
+
+    private FileSearch search(String namePattern, String content, FileSearch.Limits limits) {
+        return search(namePattern, content, limits, 10);
+    }
+
+    private FileSearch search(String namePattern, String content, FileSearch.Limits limits, int pageSize) {
+        return FileSearch.start(root, FileSystems.getDefault().getPathMatcher("glob:" + namePattern), content,
+                limits, pageSize, listings, pool);
+    }
+
+    private static List<FileSearch.Match> drain(FileSearch search, int pageSize) {
+        List<FileSearch.Match> matches = new ArrayList<>();
+        FileSearch.Page page;
+        do {
+            page = search.nextPage(pageSize);
+            matches.addAll(page.matches());
+        } while (!page.finished());
+        return matches;
+    }
+
+    private void write(String relativePath, String content) throws IOException {
+        Path file = root.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.mcpstateful.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProfileFieldsTests {
+
+    @Test
+    void acceptsWholeAgesInRange() {
+        assertThat(ProfileFields.parseAge(30)).isEqualTo(30);
+        assertThat(ProfileFields.parseAge(0)).isEqualTo(0);
+        assertThat(ProfileFields.parseAge(42.0)).isEqualTo(42);
+        assertThat(ProfileFields.parseAge(" 150 ")).isEqualTo(150);
+    }
+
+    @Test
+    void rejectsNegativeAndOutOfRangeAges() {
+        assertThat(ProfileFields.parseAge(-1)).isNull();
+        assertThat(ProfileFields.parseAge("-5")).isNull();
+        assertThat(ProfileFields.parseAge(151)).isNull();
+        assertThat(ProfileFields.parseAge(1e12)).isNull();
+        assertThat(ProfileFields.parseAge(Long.MAX_VALUE)).isNull();
+        assertThat(ProfileFields.parseAge(new BigInteger("99999999999999999999"))).isNull();
+        assertThat(ProfileFields.parseAge("99999999999")).isNull();
+        assertThat(ProfileFields.parseAge(30.5)).isNull();
+    }
+
+    @Test
+    void reportsInvalidAgesAsViolations() {
+        assertThat(ProfileFields.firstViolation("Ada", "ada@example.com", -3, "math"))
+                .startsWith("Invalid age: -3");
+        assertThat(ProfileFields.firstViolation("Ada", "ada@example.com", 4_000_000_000L, "math"))
+                .startsWith("Invalid age: 4000000000");
+        assertThat(ProfileFields.firstViolation("Ada", "ada@example.com", 36, "math")).isNull();
+    }
+}
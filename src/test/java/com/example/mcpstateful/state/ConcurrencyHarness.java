@@ -0,0 +1,82 @@
+package com.example.mcpstateful.state;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Minimal jcstress-style runner.
+ *
+ * Runs a few actors against the same fresh state, each on its own thread, many
+ * times over. Actors spin until all of them are ready instead of parking on a
+ * barrier, so they start within nanoseconds of each other and the race windows
+ * actually overlap.
+ *
+ * After each round an arbiter inspects the final state. The outcome of a round
+ * is the actors' results plus the arbiter's, written as
+ * {@code "r1, r2 | arbiter"}. Outcomes are tallied so a test can assert that
+ * every observed one is acceptable. An actor that throws is recorded as
+ * {@code !ExceptionName} rather than aborting the run.
+ */
+final class ConcurrencyHarness implements AutoCloseable {
+
+    private final ExecutorService executor;
+
+    ConcurrencyHarness(int maxActors) {
+        this.executor = Executors.newFixedThreadPool(maxActors);
+    }
+
+    @SafeVarargs
+    final <S> Map<String, Integer> run(int rounds, Supplier<S> state, Function<S, Object> arbiter,
+                                       Function<S, Object>... actors) throws Exception {
+        Map<String, Integer> outcomes = new TreeMap<>();
+        for (int round = 0; round < rounds; round++) {
+            S shared = state.get();
+            AtomicInteger waiting = new AtomicInteger(actors.length);
+            List<Future<Object>> results = new ArrayList<>(actors.length);
+            for (Function<S, Object> actor : actors) {
+                results.add(executor.submit(() -> {
+                    awaitOthers(waiting);
+                    return actor.apply(shared);
+                }));
+            }
+            StringJoiner outcome = new StringJoiner(", ");
+            for (Future<Object> result : results) {
+                try {
+                    outcome.add(String.valueOf(result.get(10, TimeUnit.SECONDS)));
+                } catch (ExecutionException e) {
+                    outcome.add("!" + e.getCause().getClass().getSimpleName());
+                }
+            }
+            outcomes.merge(outcome + " | " + arbiter.apply(shared), 1, Integer::sum);
+        }
+        return outcomes;
+    }
+
+    private static void awaitOthers(AtomicInteger waiting) {
+        waiting.decrementAndGet();
+        for (int spins = 0; waiting.get() > 0; spins++) {
+            // Yield after a while so the others get scheduled on machines with few cores
+            if (spins < 10_000) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.mcpstateful.state;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Linearizability checker for recorded concurrent histories, after Wing and
+ * Gong with Lowe's memoization.
+ *
+ * A history is linearizable if its operations can be put in one order that
+ * respects real time (an operation that returned before another was invoked
+ * comes first) and in which a sequential model produces the recorded result
+ * of every operation. The search tries each operation that may come next,
+ * backtracks on a mismatch, and never revisits the same set of linearized
+ * operations in the same model state.
+ */
+final class LinearizabilityChecker {
+
+    private LinearizabilityChecker() {
+    }
+
+    /**
+     * One completed call: what was invoked on which key, what it returned, and
+     * when it was invoked and returned ({@link System#nanoTime()}).
+     */
+    record Operation(String key, String name, Object argument, Object result, long invokedAt, long returnedAt) {
+    }
+
+    /**
+     * Sequential specification of the object under test. States must be
+     * immutable values with {@code equals}/{@code hashCode}.
+     */
+    interface Model<S> {
+
+        S initialState();
+
+        /**
+         * Apply an operation in the given state. Returns the next state, or
+         * null if the operation could not have returned its recorded result.
+         */
+        S apply(S state, Operation operation);
+    }
+
+    /**
+     * Check a whole history against the model.
+     */
+    static <S> boolean isLinearizable(List<Operation> history, Model<S> model) {
+        List<Operation> operations = new ArrayList<>(history);
+        operations.sort(Comparator.comparingLong(Operation::invokedAt));
+        return search(operations, new BitSet(operations.size()), model.initialState(), model, new HashSet<>());
+    }
+
+    /**
+     * Check each key's operations on their own. Valid when operations on
+     * different keys never affect each other, and much cheaper than checking
+     * the whole history at once.
+     */
+    static <S> boolean isLinearizablePerKey(List<Operation> history, Model<S> model) {
+        Map<String, List<Operation>> byKey = new LinkedHashMap<>();
+        for (Operation operation : history) {
+            byKey.computeIfAbsent(operation.key(), key -> new ArrayList<>()).add(operation);
+        }
+        return byKey.values().stream().allMatch(operations -> isLinearizable(operations, model));
+    }
+
+    private static <S> boolean search(List<Operation> operations, BitSet linearized, S state,
+                                      Model<S> model, Set<List<Object>> visited) {
+        if (linearized.cardinality() == operations.size()) {
+            return true;
+        }
+        if (!visited.add(List.of(linearized.clone(), state))) {
+            return false;
+        }
+
+        // Only operations invoked before every pending operation returned may come next
+        long earliestReturn = Long.MAX_VALUE;
+        for (int i = linearized.nextClearBit(0); i < operations.size(); i = linearized.nextClearBit(i + 1)) {
+            earliestReturn = Math.min(earliestReturn, operations.get(i).returnedAt());
+        }
+
+        for (int i = linearized.nextClearBit(0); i < operations.size(); i = linearized.nextClearBit(i + 1)) {
+            Operation operation = operations.get(i);
+            if (operation.invokedAt() > earliestReturn) {
+                // Sorted by invocation, so no later operation qualifies either
+                break;
+            }
+            S next = model.apply(state, operation);
+            if (next != null) {
+                linearized.set(i);
+                if (search(operations, linearized, next, model, visited)) {
+                    return true;
+                }
+                linearized.clear(i);
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.mcpstateful.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OffHeapParamStoreTests {
+
+    private static final int BLOCK = 1024;
+
+    private final OffHeapParamStore store = new OffHeapParamStore(4096, "deflate", BLOCK, 64 * BLOCK);
+
+    @Test
+    void compressesLargeValuesAndDecodesThemOnRead() {
+        String content = "line of file content ✓\n".repeat(2_000);
+        ToolSession session = session();
+
+        session.addParam("content", content);
+
+        Object stored = session.getCollectedParams().get("content");
+        assertThat(stored).isInstanceOf(OffHeapValue.class);
+        assertThat(((OffHeapValue) stored).isCompressed()).isTrue();
+        assertThat(((OffHeapValue) stored).storedBytes()).isLessThan(content.length() / 10);
+        assertThat(session.getParam("content")).isEqualTo(content);
+        assertThat(session.getParam("content")).isEqualTo(content);
+    }
+
+    @Test
+    void storesValuesRawAcrossBlocksWhenCompressionIsOff() {
+        OffHeapParamStore raw = new OffHeapParamStore(4096, "none", BLOCK, 64 * BLOCK);
+        ToolSession session = new ToolSession("create_file", Map.of("content", "text"));
+        session.setValueStore(raw);
+        String content = "naïve café ✓ ".repeat(1_000);
+
+        session.addParam("content", content);
+
+        OffHeapValue stored = (OffHeapValue) session.getCollectedParams().get("content");
+        assertThat(stored.isCompressed()).isFalse();
+        assertThat(stored.storedBytes()).isEqualTo(content.getBytes(StandardCharsets.UTF_8).length);
+        assertThat(session.getParam("content")).isEqualTo(content);
+    }
+
+    @Test
+    void keepsSmallAndNonStringValuesOnHeap() {
+        ToolSession session = session();
+
+        session.addParam("file_path", "/tmp/a.txt");
+        session.addParam("age", 42);
+
+        assertThat(session.getCollectedParams()).containsEntry("file_path", "/tmp/a.txt").containsEntry("age", 42);
+        assertThat(store.getUsedBytes()).isZero();
+    }
+
+    @Test
+    void releasingTheSessionReturnsBlocksToThePool() {
+        ToolSession session = session();
+        session.addParam("content", "x".repeat(100_000));
+        OffHeapValue stored = (OffHeapValue) session.getCollectedParams().get("content");
+        long allocated = store.getAllocatedBytes();
+        assertThat(store.getUsedBytes()).isPositive();
+
+        session.release();
+        session.release();
+
+        assertThat(store.getUsedBytes()).isZero();
+        assertThat(stored.decode()).isNull();
+        assertThatThrownBy(() -> session.getParam("content")).isInstanceOf(SessionClosedException.class);
+
+        // A new value reuses the freed blocks instead of allocating more
+        ToolSession next = session();
+        next.addParam("content", "y".repeat(100_000));
+        assertThat(store.getAllocatedBytes()).isEqualTo(allocated);
+    }
+
+    @Test
+    void valuesAddedToAReleasedSessionStayOnHeap() {
+        ToolSession session = session();
+        session.release();
+
+        session.addParam("content", "late".repeat(10_000));
+
+        assertThat(session.getCollectedParams().get("content")).isEqualTo("late".repeat(10_000));
+        assertThat(store.getUsedBytes()).isZero();
+    }
+
+    @Test
+    void replacingOrRemovingAValueReleasesIt() {
+        ToolSession session = session();
+        session.addParam("content", "a".repeat(50_000));
+        OffHeapValue first = (OffHeapValue) session.getCollectedParams().get("content");
+
+        session.addParam("content", "b".repeat(50_000));
+        assertThat(first.decode()).isNull();
+        assertThat(session.getParam("content")).isEqualTo("b".repeat(50_000));
+
+        session.removeParam("content");
+        assertThat(session.getParam("content")).isNull();
+        assertThat(store.getUsedBytes()).isZero();
+    }
+
+    @Test
+    void readsRacingAReplacementSeeOneOfTheValues() throws Exception {
+        ToolSession session = session();
+        String first = "a".repeat(5_000);
+        String second = "b".repeat(5_000);
+        session.addParam("content", first);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                session.addParam("content", i % 2 == 0 ? second : first);
+            }
+            done.set(true);
+        });
+
+        writer.start();
+        try {
+            // A read that looked up a value just before it was replaced returns the replacement
+            while (!done.get()) {
+                assertThat(session.getParam("content")).isIn(first, second);
+            }
+        } finally {
+            writer.join();
+        }
+    }
+
+    @Test
+    void fallsBackToHeapWhenThePoolIsFull() {
+        OffHeapParamStore tiny = new OffHeapParamStore(4096, "none", BLOCK, 8 * BLOCK);
+        ToolSession session = new ToolSession("create_file", Map.of("content", "text"));
+        session.setValueStore(tiny);
+
+        session.addParam("first", "a".repeat(6 * BLOCK));
+        session.addParam("second", "b".repeat(6 * BLOCK));
+
+        assertThat(session.getCollectedParams().get("first")).isInstanceOf(OffHeapValue.class);
+        assertThat(session.getCollectedParams().get("second")).isEqualTo("b".repeat(6 * BLOCK));
+        // The partial write was rolled back
+        assertThat(tiny.getUsedBytes()).isEqualTo(6 * BLOCK);
+        assertThat(tiny.getAllocatedBytes()).isEqualTo(8 * BLOCK);
+    }
+
+    private ToolSession session() {
+        ToolSession session = new ToolSession("create_file", Map.of("file_path", "path", "content", "text"));
+        session.setValueStore(store);
+        return session;
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.mcpstateful.state;
+
+import com.example.mcpstateful.state.LinearizabilityChecker.Model;
+import com.example.mcpstateful.state.LinearizabilityChecker.Operation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrency tests for the session layer: jcstress-style races on a single
+ * pair of operations, plus randomized multi-threaded histories that must be
+ * linearizable against a sequential model of {@link SessionManager},
+ * {@link ToolSession} and {@link ToolResultCache}.
+ *
+ * Randomized runs print nothing on success; a failure reports the seed so the
+ * same operation mix can be replayed.
+ */
+class SessionConcurrencyTests {
+
+    private static final int RACE_ROUNDS = 2_000;
+    private static final int HISTORY_ROUNDS = 150;
+    private static final int THREADS = 4;
+    private static final String ID = "session-1";
+
+    private final ConcurrencyHarness harness = new ConcurrencyHarness(THREADS);
+
+    @AfterEach
+    void shutDown() {
+        harness.close();
+    }
+
+    // --- jcstress-style races -------------------------------------------------
+
+    @Test
+    void concurrentCreatesWithSameIdLeaveExactlyOneSession() throws Exception {
+        Map<String, Integer> outcomes = harness.run(RACE_ROUNDS, SessionManager::new,
+                sessions -> toolName(sessions.getSession(ID)) + "/" + sessions.getSessionCount(),
+                sessions -> toolName(sessions.createSession(ID, "A", required("a"))),
+                sessions -> toolName(sessions.createSession(ID, "B", required("a"))));
+
+        assertThat(outcomes.keySet()).isSubsetOf("A, B | A/1", "A, B | B/1");
+    }
+
+    @Test
+    void concurrentFirstTurnsWithSameIdShareOneSession() throws Exception {
+        Map<String, Integer> outcomes = harness.run(RACE_ROUNDS, SessionManager::new,
+                sessions -> toolName(sessions.getSession(ID)),
+                sessions -> toolName(sessions.getOrCreateSession(ID, "A", required("a"))),
+                sessions -> toolName(sessions.getOrCreateSession(ID, "B", required("a"))));
+
+        assertThat(outcomes.keySet()).isSubsetOf("A, A | A", "B, B | B");
+    }
+
+    @Test
+    void concurrentFirstTurnsKeepBothParameters() throws Exception {
+        Map<String, Integer> outcomes = harness.run(RACE_ROUNDS, SessionManager::new,
+                sessions -> {
+                    ToolSession session = sessions.getSession(ID);
+                    return session.getCollectedParams().keySet().stream().sorted().toList() + " " + session.isComplete();
+                },
+                sessions -> {
+                    sessions.getOrCreateSession(ID, "tool", required("a", "b")).addParam("a", 1);
+                    return "ok";
+                },
+                sessions -> {
+                    sessions.getOrCreateSession(ID, "tool", required("a", "b")).addParam("b", 2);
+                    return "ok";
+                });
+
+        assertThat(outcomes.keySet()).isSubsetOf("ok, ok | [a, b] true");
+    }
+
+    @Test
+    void updateRacingDeleteNeverResurrectsTheSession() throws Exception {
+        Map<String, Integer> outcomes = harness.run(RACE_ROUNDS, () -> {
+                    SessionManager sessions = new SessionManager();
+                    sessions.createSession(ID, "tool", required("a"));
+                    return sessions;
+                },
+                sessions -> sessions.sessionExists(ID),
+                sessions -> toolName(sessions.updateSession(ID, Map.of("a", 1))),
+                sessions -> {
+                    sessions.deleteSession(ID);
+                    return "deleted";
+                });
+
+        assertThat(outcomes.keySet()).isSubsetOf("tool, deleted | false", "null, deleted | false");
+    }
+
+    @Test
+    void operationsOnDifferentIdsDoNotInterfere() throws Exception {
+        Map<String, Integer> outcomes = harness.run(RACE_ROUNDS, () -> {
+                    SessionManager sessions = new SessionManager();
+                    sessions.createSession("other", "other", required("a"));
+                    return sessions;
+                },
+                sessions -> sessions.sessionExists(ID) + " " + sessions.sessionExists("other"),
+                sessions -> toolName(sessions.createSession(ID, "tool", required("a"))),
+                sessions -> {
+                    sessions.deleteSession("other");
+                    return "deleted";
+                },
+                sessions -> toolName(sessions.updateSession(ID, Map.of("a", 1))));
+
+        assertThat(outcomes.keySet()).isSubsetOf("tool, deleted, tool | true false", "tool, deleted, null | true false");
+    }
+
+    @Test
+    void finalParametersFromConcurrentTurnsCompleteTheSessionOnce() throws Exception {
+        Map<String, Integer> outcomes = harness.run(RACE_ROUNDS, () -> {
+                    SessionManager sessions = new SessionManager();
+                    sessions.createSession(ID, "tool", required("a", "b"));
+                    return sessions;
+                },
+                sessions -> sessions.getSession(ID).isComplete() + " " + sessions.getSession(ID).getNextMissingParam(),
+                sessions -> finalTurn(sessions, "a"),
+                sessions -> finalTurn(sessions, "b"));
+
+        // Both turns may see the session complete, but exactly one of them gets to run the tool
+        assertThat(outcomes.keySet()).isSubsetOf("run, skip | true null", "skip, run | true null");
+    }
+
+    @Test
+    void aClaimedSessionCanBeClaimedAgainOnlyAfterItIsReleased() throws Exception {
+        Map<String, Integer> outcomes = harness.run(RACE_ROUNDS, () -> {
+                    SessionManager sessions = new SessionManager();
+                    sessions.createSession(ID, "tool", required());
+                    return sessions;
+                },
+                sessions -> sessions.claimForCompletion(ID, sessions.getSession(ID)),
+                sessions -> sessions.claimForCompletion(ID, sessions.getSession(ID)),
+                sessions -> sessions.claimForCompletion(ID, sessions.getSession(ID)));
+
+        // Nobody released, so the arbiter's claim fails too
+        assertThat(outcomes.keySet()).isSubsetOf("true, false | false", "false, true | false");
+
+        SessionManager sessions = new SessionManager();
+        ToolSession session = sessions.createSession(ID, "tool", required());
+        assertThat(sessions.claimForCompletion(ID, session)).isTrue();
+        sessions.releaseClaim(session);
+        assertThat(sessions.claimForCompletion(ID, session)).isTrue();
+        sessions.completeSession(ID);
+        sessions.releaseClaim(session);
+        assertThat(sessions.claimForCompletion(ID, session)).isFalse();
+    }
+
+    @Test
+    void requiringAParameterWhileItIsAddedNeverLeavesItMissing() throws Exception {
+        Map<String, Integer> outcomes = harness.run(RACE_ROUNDS, () -> new ToolSession("tool", required()),
+                session -> session.isComplete() + " " + session.getMissingParams(),
+                session -> {
+                    session.requireParam("x", "variable");
+                    return "required";
+                },
+                session -> {
+                    session.addParam("x", 1.0);
+                    return "added";
+                });
+
+        assertThat(outcomes.keySet()).isSubsetOf("required, added | true []");
+    }
+
+    @Test
+    void readingTheNextMissingParameterWhileTheLastOneArrivesNeverFails() throws Exception {
+        Map<String, Integer> outcomes = harness.run(RACE_ROUNDS, () -> new ToolSession("tool", required("a")),
+                ToolSession::isComplete,
+                ToolSession::getNextMissingParam,
+                session -> {
+                    session.addParam("a", 1);
+                    return "added";
+                });
+
+        assertThat(outcomes.keySet()).isSubsetOf("a, added | true", "null, added | true");
+    }
+
+    // --- Randomized histories -------------------------------------------------
+
+    @Test
+    void sessionManagerHistoriesAreLinearizable() throws Exception {
+        SessionManager[] store = new SessionManager[1];
+        for (int round = 0; round < HISTORY_ROUNDS; round++) {
+            store[0] = new SessionManager();
+            long seed = 1_000L + round;
+            List<Operation> history = recordHistory(THREADS, 30, seed, (random, tag) -> {
+                SessionManager sessions = store[0];
+                String key = "s" + random.nextInt(3);
+                return switch (random.nextInt(6)) {
+                    case 0 -> timed(key, "create", tag, () -> toolName(sessions.createSession(key, tag, required("a"))));
+                    case 1 -> timed(key, "getOrCreate", tag, () -> toolName(sessions.getOrCreateSession(key, tag, required("a"))));
+                    case 2 -> timed(key, "get", null, () -> toolName(sessions.getSession(key)));
+                    case 3 -> timed(key, "update", null, () -> toolName(sessions.updateSession(key, Map.of("a", tag))));
+                    case 4 -> timed(key, "delete", null, () -> {
+                        sessions.deleteSession(key);
+                        return null;
+                    });
+                    default -> timed(key, "exists", null, () -> sessions.sessionExists(key));
+                };
+            });
+
+            assertThat(LinearizabilityChecker.isLinearizablePerKey(history, SESSION_MANAGER_MODEL))
+                    .as("SessionManager history with seed %d is not linearizable: %s", seed, history)
+                    .isTrue();
+        }
+    }
+
+    @Test
+    void toolSessionHistoriesAreLinearizable() throws Exception {
+        ToolSession[] target = new ToolSession[1];
+        for (int round = 0; round < HISTORY_ROUNDS; round++) {
+            target[0] = new ToolSession("tool", required("a", "b"));
+            long seed = 2_000L + round;
+            List<Operation> history = recordHistory(THREADS, 12, seed, (random, tag) -> {
+                ToolSession session = target[0];
+                String param = String.valueOf((char) ('a' + random.nextInt(4)));
+                return switch (random.nextInt(4)) {
+                    case 0 -> timed(ID, "add", param, () -> {
+                        session.addParam(param, tag);
+                        return null;
+                    });
+                    case 1 -> timed(ID, "require", param, () -> {
+                        session.requireParam(param, "parameter " + param);
+                        return null;
+                    });
+                    case 2 -> timed(ID, "isComplete", null, session::isComplete);
+                    default -> timed(ID, "nextMissing", null, session::getNextMissingParam);
+                };
+            });
+
+            assertThat(LinearizabilityChecker.isLinearizable(history, TOOL_SESSION_MODEL))
+                    .as("ToolSession history with seed %d is not linearizable: %s", seed, history)
+                    .isTrue();
+        }
+    }
+
+    @Test
+    void resultCacheHistoriesAreLinearizableAcrossEviction() throws Exception {
+        ToolResultCache[] target = new ToolResultCache[1];
+        for (int round = 0; round < HISTORY_ROUNDS; round++) {
+            // Small capacity so most puts evict; TTL long enough never to expire during a round
+            target[0] = new ToolResultCache(CACHE_CAPACITY, 3_600);
+            long seed = 3_000L + round;
+            List<Operation> history = recordHistory(3, 10, seed, (random, tag) -> {
+                ToolResultCache cache = target[0];
+                String sessionId = "s" + random.nextInt(5);
+                return switch (random.nextInt(3)) {
+                    case 0 -> timed("cache", "put", sessionId + "=" + tag, () -> cache.put(sessionId, "f", tag));
+                    case 1 -> timed("cache", "get", sessionId, () -> cache.get(sessionId, "f"));
+                    default -> timed("cache", "size", null, cache::size);
+                };
+            });
+
+            assertThat(LinearizabilityChecker.isLinearizable(history, RESULT_CACHE_MODEL))
+                    .as("ToolResultCache history with seed %d is not linearizable: %s", seed, history)
+                    .isTrue();
+        }
+    }
+
+    @Test
+    void checkerRejectsHistoriesThatNoOrderExplains() {
+        // create returned before get was invoked, yet get saw no session
+        List<Operation> stale = List.of(
+                new Operation(ID, "create", "A", "A", 0, 10),
+                new Operation(ID, "get", null, null, 20, 30));
+        // The same calls overlapping in time may be ordered get-then-create
+        List<Operation> overlapping = List.of(
+                new Operation(ID, "create", "A", "A", 0, 30),
+                new Operation(ID, "get", null, null, 10, 20));
+
+        assertThat(LinearizabilityChecker.isLinearizable(stale, SESSION_MANAGER_MODEL)).isFalse();
+        assertThat(LinearizabilityChecker.isLinearizable(overlapping, SESSION_MANAGER_MODEL)).isTrue();
+    }
+
+    // --- Sequential models ----------------------------------------------------
+
+    /**
+     * Per session ID: the tool name of the current session (unique per create), or "" if none.
+     */
+    private static final Model<String> SESSION_MANAGER_MODEL = new Model<>() {
+        @Override
+        public String initialState() {
+            return "";
+        }
+
+        @Override
+        public String apply(String current, Operation op) {
+            String visible = current.isEmpty() ? null : current;
+            return switch (op.name()) {
+                case "create" -> (String) op.argument();
+                case "getOrCreate" -> {
+                    String expected = visible == null ? (String) op.argument() : visible;
+                    yield expected.equals(op.result()) ? expected : null;
+                }
+                case "get", "update" -> Objects.equals(visible, op.result()) ? current : null;
+                case "delete" -> "";
+                case "exists" -> op.result().equals(visible != null) ? current : null;
+                default -> throw new IllegalArgumentException(op.name());
+            };
+        }
+    };
+
+    private record ParamState(Set<String> collected, List<String> missing) {
+    }
+
+    private static final Model<ParamState> TOOL_SESSION_MODEL = new Model<>() {
+        @Override
+        public ParamState initialState() {
+            return new ParamState(Set.of(), List.of("a", "b"));
+        }
+
+        @Override
+        public ParamState apply(ParamState state, Operation op) {
+            String param = (String) op.argument();
+            return switch (op.name()) {
+                case "add" -> {
+                    Set<String> collected = new HashSet<>(state.collected());
+                    collected.add(param);
+                    List<String> missing = new ArrayList<>(state.missing());
+                    missing.remove(param);
+                    yield new ParamState(Set.copyOf(collected), List.copyOf(missing));
+                }
+                case "require" -> {
+                    if (state.collected().contains(param) || state.missing().contains(param)) {
+                        yield state;
+                    }
+                    List<String> missing = new ArrayList<>(state.missing());
+                    missing.add(param);
+                    yield new ParamState(state.collected(), List.copyOf(missing));
+                }
+                case "isComplete" -> op.result().equals(state.missing().isEmpty()) ? state : null;
+                case "nextMissing" -> Objects.equals(op.result(),
+                        state.missing().isEmpty() ? null : state.missing().get(0)) ? state : null;
+                default -> throw new IllegalArgumentException(op.name());
+            };
+        }
+    };
+
+    private static final int CACHE_CAPACITY = 2;
+
+    /**
+     * Cached entries as "sessionId=result" in insertion order; the oldest is evicted first.
+     */
+    private static final Model<List<String>> RESULT_CACHE_MODEL = new Model<>() {
+        @Override
+        public List<String> initialState() {
+            return List.of();
+        }
+
+        @Override
+        public List<String> apply(List<String> entries, Operation op) {
+            return switch (op.name()) {
+                case "put" -> {
+                    String entry = (String) op.argument();
+                    String prefix = entry.substring(0, entry.indexOf('=') + 1);
+                    List<String> next = new ArrayList<>(entries);
+                    next.removeIf(existing -> existing.startsWith(prefix));
+                    next.add(entry);
+                    while (next.size() > CACHE_CAPACITY) {
+                        next.remove(0);
+                    }
+                    yield List.copyOf(next);
+                }
+                case "get" -> {
+                    String prefix = op.argument() + "=";
+                    String cached = entries.stream()
+                            .filter(existing -> existing.startsWith(prefix))
+                            .map(existing -> existing.substring(prefix.length()))
+                            .findFirst()
+                            .orElse(null);
+                    yield Objects.equals(cached, op.result()) ? entries : null;
+                }
+                case "size" -> op.result().equals(entries.size()) ? entries : null;
+                default -> throw new IllegalArgumentException(op.name());
+            };
+        }
+    };
+
+    // --- Helpers --------------------------------------------------------------
+
+    @FunctionalInterface
+    private interface Step {
+        Operation perform(RandomGenerator random, String tag);
+    }
+
+    /**
+     * Run {@code operationsPerThread} random steps on each of {@code threads}
+     * threads, all released at once, and collect every completed operation.
+     */
+    private static List<Operation> recordHistory(int threads, int operationsPerThread, long seed, Step step)
+            throws Exception {
+        List<Operation> history = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        SplittableRandom seeds = new SplittableRandom(seed);
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            SplittableRandom random = seeds.split();
+            workers.add(() -> {
+                start.await();
+                for (int i = 0; i < operationsPerThread; i++) {
+                    history.add(step.perform(random, thread + "." + i));
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> running = new ArrayList<>();
+            for (Callable<Void> worker : workers) {
+                running.add(executor.submit(worker));
+            }
+            start.countDown();
+            for (Future<Void> worker : running) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return history;
+    }
+
+    private static Operation timed(String key, String name, Object argument, Supplier<Object> call) {
+        long invokedAt = System.nanoTime();
+        Object result = call.get();
+        return new Operation(key, name, argument, result, invokedAt, System.nanoTime());
+    }
+
+    /**
+     * A final turn as the tools run it: add the last parameter, then run only if complete and claimed.
+     */
+    private static String finalTurn(SessionManager sessions, String param) {
+        ToolSession session = sessions.getSession(ID);
+        session.addParam(param, 1);
+        return session.isComplete() && sessions.claimForCompletion(ID, session) ? "run" : "skip";
+    }
+
+    private static String toolName(ToolSession session) {
+        return session == null ? null : session.getToolName();
+    }
+
+    private static Map<String, String> required(String... names) {
+        Map<String, String> required = new LinkedHashMap<>();
+        for (String name : names) {
+            required.put(name, "parameter " + name);
+        }
+        return required;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.mcpstateful.state;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.BufferOverflowStrategy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionEventTests {
+
+    private final SessionManager sessions = new SessionManager();
+
+    @Test
+    void publishesLifecycleOfACompletedSession() {
+        List<SessionEvent> received = new CopyOnWriteArrayList<>();
+        Disposable subscription = sessions.events().subscribe(received::add);
+
+        ToolSession session = sessions.createSession("s1", "create_file", Map.of("file_path", "path", "content", "text"));
+        session.addParam("file_path", "/tmp/a.txt");
+        sessions.updateSession("s1", Map.of("content", "hello"));
+        assertThat(sessions.claimForCompletion("s1", session)).isTrue();
+        sessions.completeSession("s1");
+        subscription.dispose();
+
+        assertThat(received).extracting(SessionEvent::type).containsExactly(
+                SessionEvent.Type.CREATED,
+                SessionEvent.Type.PARAM_ADDED,
+                SessionEvent.Type.PARAM_ADDED,
+                SessionEvent.Type.READY,
+                SessionEvent.Type.COMPLETED);
+        assertThat(received).extracting(SessionEvent::sessionId).containsOnly("s1");
+        assertThat(received).extracting(SessionEvent::tool).containsOnly("create_file");
+        assertThat(received.get(1).parameter()).isEqualTo("file_path");
+        assertThat(received.get(1).missing()).containsExactly("content");
+        assertThat(received.get(3).missing()).isEmpty();
+        assertThat(received).extracting(SessionEvent::sequence).isSorted().doesNotHaveDuplicates();
+        assertThat(sessions.getEventSubscriberCount()).isZero();
+    }
+
+    @Test
+    void readyIsPublishedOnlyWhenTheToolIsAboutToRun() {
+        List<SessionEvent> received = new CopyOnWriteArrayList<>();
+        Disposable subscription = sessions.events().subscribe(received::add);
+
+        // As calculate does: the expression arrives, then declares the variables it needs
+        ToolSession session = sessions.createSession("s2", "calculate", Map.of("expression", "expr"));
+        session.addParam("expression", "a * 2");
+        session.requireParam("a", "variable");
+        session.addParam("a", 3.0);
+        assertThat(sessions.claimForCompletion("s2", session)).isTrue();
+        subscription.dispose();
+
+        assertThat(received).extracting(SessionEvent::type).containsExactly(
+                SessionEvent.Type.CREATED,
+                SessionEvent.Type.PARAM_ADDED,
+                SessionEvent.Type.PARAM_ADDED,
+                SessionEvent.Type.READY);
+        assertThat(received.get(3).missing()).isEmpty();
+    }
+
+    @Test
+    void expiresIdleSessions() throws InterruptedException {
+        List<SessionEvent> received = new CopyOnWriteArrayList<>();
+        Disposable subscription = sessions.events().subscribe(received::add);
+
+        sessions.createSession("idle", "calculate", Map.of("expression", "expr"));
+        TimeUnit.MILLISECONDS.sleep(200);
+        sessions.createSession("fresh", "calculate", Map.of("expression", "expr"));
+
+        assertThat(sessions.expireSessionsIdleLongerThan(Duration.ofMillis(100))).isEqualTo(1);
+        subscription.dispose();
+
+        assertThat(sessions.sessionExists("idle")).isFalse();
+        assertThat(sessions.sessionExists("fresh")).isTrue();
+        assertThat(received).last().satisfies(event -> {
+            assertThat(event.type()).isEqualTo(SessionEvent.Type.EXPIRED);
+            assertThat(event.sessionId()).isEqualTo("idle");
+        });
+    }
+
+    @Test
+    void subscribersAreNotifiedOutsideTheSessionLock() {
+        ToolSession session = sessions.createSession("locked", "calculate", Map.of("expression", "expr"));
+        AtomicBoolean otherTurnProceeded = new AtomicBoolean();
+        Disposable subscription = sessions.events()
+                .filter(event -> event.type() == SessionEvent.Type.PARAM_ADDED)
+                .subscribe(event -> {
+                    // Another turn on the same session must not wait for this subscriber
+                    Thread otherTurn = new Thread(() -> session.removeParam("format"));
+                    otherTurn.start();
+                    try {
+                        otherTurn.join(5_000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    otherTurnProceeded.set(!otherTurn.isAlive());
+                });
+
+        session.addParam("expression", "1 + 1");
+        subscription.dispose();
+
+        assertThat(otherTurnProceeded.get()).isTrue();
+    }
+
+    @Test
+    void slowSubscriberLosesOldestEventsWithoutBlockingPublishers() {
+        AtomicInteger dropped = new AtomicInteger();
+        List<SessionEvent> received = new CopyOnWriteArrayList<>();
+        BaseSubscriber<SessionEvent> stalled = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                // Request nothing until the test says so
+            }
+
+            @Override
+            protected void hookOnNext(SessionEvent event) {
+                received.add(event);
+            }
+        };
+        sessions.events()
+                .onBackpressureBuffer(4, event -> dropped.incrementAndGet(), BufferOverflowStrategy.DROP_OLDEST)
+                .subscribe(stalled);
+
+        ToolSession session = sessions.createSession("busy", "calculate", Map.of("expression", "expr"));
+        for (int i = 0; i < 1_000; i++) {
+            session.addParam("format", "decimal");
+        }
+        // Publishing completed although the subscriber has not read anything
+        assertThat(received).isEmpty();
+
+        stalled.request(Long.MAX_VALUE);
+        stalled.dispose();
+
+        assertThat(received).hasSize(4);
+        assertThat(dropped.get()).isEqualTo(1_001 - 4);
+        assertThat(received.get(3).sequence()).isEqualTo(1_001);
+    }
+}
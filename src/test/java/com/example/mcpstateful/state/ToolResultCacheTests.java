@@ -0,0 +1,94 @@
+package com.example.mcpstateful.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ToolResultCacheTests {
+
+    private final ToolResultCache cache = new ToolResultCache(100, 300);
+
+    @Test
+    void concurrentIdenticalFinalCallsExecuteOnce() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        String fingerprint = ToolResultCache.fingerprint("create_file", "/tmp/a.txt", "hello");
+
+        CompletableFuture<String> original = CompletableFuture.supplyAsync(() ->
+                cache.getOrExecute("s1", fingerprint, () -> {
+                    executions.incrementAndGet();
+                    started.countDown();
+                    await(finish);
+                    return cache.put("s1", fingerprint, "created");
+                }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // A retry after a client-side timeout, while the original is still writing
+        AtomicReference<String> retried = new AtomicReference<>();
+        Thread retry = new Thread(() -> retried.set(cache.getOrExecute("s1", fingerprint, () -> {
+            executions.incrementAndGet();
+            return "executed twice";
+        })));
+        retry.start();
+        waitUntilBlocked(retry);
+        finish.countDown();
+
+        assertThat(original.get(5, TimeUnit.SECONDS)).isEqualTo("created");
+        retry.join(5_000);
+        assertThat(retried.get()).isEqualTo("created");
+        assertThat(executions.get()).isEqualTo(1);
+
+        // Later retries are answered from the cache
+        assertThat(cache.getOrExecute("s1", fingerprint, () -> "executed again")).isEqualTo("created");
+    }
+
+    @Test
+    void aFailedCallIsNotRemembered() {
+        String fingerprint = ToolResultCache.fingerprint("calculate", "1 / 0");
+
+        assertThatThrownBy(() -> cache.getOrExecute("s1", fingerprint, () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(cache.getOrExecute("s1", fingerprint, () -> "retried")).isEqualTo("retried");
+    }
+
+    @Test
+    void callsWithoutASessionAreDeduplicatedOnTheirArguments() {
+        AtomicInteger executions = new AtomicInteger();
+        String fingerprint = ToolResultCache.fingerprint("create_file", "/tmp/a.txt", "hello");
+
+        String first = cache.getOrExecute(null, fingerprint,
+                () -> cache.put(null, fingerprint, "created " + executions.incrementAndGet()));
+        String retried = cache.getOrExecute(" ", fingerprint,
+                () -> cache.put(" ", fingerprint, "created " + executions.incrementAndGet()));
+
+        assertThat(retried).isEqualTo(first);
+        assertThat(executions.get()).isEqualTo(1);
+        // A session's calls are kept apart from calls without one
+        assertThat(cache.get("s1", fingerprint)).isNull();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntilBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.mcpstateful.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolSessionTests {
+
+    @Test
+    void aNullValueLeavesTheParameterMissing() {
+        ToolSession session = new ToolSession("tool", Map.of("a", "parameter a"));
+
+        session.addParam("a", null);
+
+        assertThat(session.isComplete()).isFalse();
+        assertThat(session.getNextMissingParam()).isEqualTo("a");
+        assertThat(session.getCollectedParams().containsKey("a")).isFalse();
+    }
+
+    @Test
+    void aNullValueKeepsTheValueCollectedEarlier() {
+        ToolSession session = new ToolSession("tool", Map.of("a", "parameter a"));
+        session.addParam("a", 1);
+
+        session.addParam("a", null);
+
+        assertThat(session.getParam("a")).isEqualTo(1);
+        assertThat(session.isComplete()).isTrue();
+    }
+}